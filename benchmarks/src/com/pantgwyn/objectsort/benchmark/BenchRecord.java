@@ -0,0 +1,61 @@
+package com.pantgwyn.objectsort.benchmark;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * A small serializable record used by the ObjectSort benchmarks.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class BenchRecord implements Serializable
+{
+
+	private static final long										serialVersionUID	= 4526174926235017723L;
+
+	/** orders BenchRecords by key */
+	public static final Comparator<BenchRecord>	KEY_ORDER					= new Comparator<BenchRecord>()
+																																	{
+																																		@Override
+																																		public int compare(	BenchRecord r0,
+																																												BenchRecord r1)
+																																		{
+																																			return Long.compare(r0.key, r1.key);
+																																		}
+																																	};
+
+	private long																key;
+	private int																	i1;
+	private int																	i2;
+	private String															payload;
+
+	public BenchRecord(long key, int i1, int i2, String payload)
+	{
+		this.key			= key;
+		this.i1				= i1;
+		this.i2				= i2;
+		this.payload	= payload;
+	}
+
+	public long getKey()
+	{
+		return key;
+	}
+
+	public int getI1()
+	{
+		return i1;
+	}
+
+	public int getI2()
+	{
+		return i2;
+	}
+
+	public String getPayload()
+	{
+		return payload;
+	}
+
+}
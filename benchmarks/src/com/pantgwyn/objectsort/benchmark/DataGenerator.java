@@ -0,0 +1,255 @@
+package com.pantgwyn.objectsort.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible input data for the ObjectSort benchmarks.
+ * <p>
+ * Every generator is driven by a seeded Random so the same parameters always
+ * produce the same data. Keys are formatted as fixed width decimal strings so
+ * that the text order matches the numeric order.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class DataGenerator
+{
+
+	/** the seed used by the benchmarks */
+	public static final long	SEED							= 20210101L;
+
+	private static final int	DUPLICATE_KEYS		= 16;
+	private static final int	PAYLOAD_LENGTH		= 32;
+
+	/**
+	 * The order of the generated keys.
+	 */
+	public enum Distribution
+	{
+		/** uniformly random keys */
+		RANDOM,
+		/** keys already in ascending order */
+		PRESORTED,
+		/** keys in descending order */
+		REVERSE,
+		/** random keys drawn from a handful of distinct values */
+		DUPLICATES;
+	}
+
+	private DataGenerator()
+	{
+	}
+
+	/**
+	 * Generate the key of the nth record.
+	 *
+	 * @param distribution - the order of the keys
+	 * @param n            - the record number
+	 * @param count        - the total number of records
+	 * @param rand         - the seeded Random
+	 * @return long - a non negative key
+	 */
+	public static long key(Distribution distribution, int n, int count, Random rand)
+	{
+		switch (distribution)
+		{
+			case PRESORTED:
+				return n;
+			case REVERSE:
+				return count - n;
+			case DUPLICATES:
+				return rand.nextInt(DUPLICATE_KEYS);
+			default:
+				return rand.nextLong() & Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Generate text lines.
+	 *
+	 * @param distribution - the order of the keys
+	 * @param count        - the number of lines
+	 * @param seed         - the Random seed
+	 * @return List - the lines
+	 */
+	public static List<String> textLines(Distribution distribution, int count, long seed)
+	{
+		Random				rand	= new Random(seed);
+		List<String>	lines	= new ArrayList<String>(count);
+
+		for (int n = 0; n < count; n++)
+			lines.add(textLine(key(distribution, n, count, rand), rand));
+
+		return lines;
+	}
+
+	private static String textLine(long key, Random rand)
+	{
+		return String.format("%019d", key) + " " + payload(rand);
+	}
+
+	/**
+	 * Generate BenchRecords.
+	 *
+	 * @param distribution - the order of the keys
+	 * @param count        - the number of records
+	 * @param seed         - the Random seed
+	 * @return List - the records
+	 */
+	public static List<BenchRecord> records(Distribution distribution, int count, long seed)
+	{
+		Random						rand		= new Random(seed);
+		List<BenchRecord>	records	= new ArrayList<BenchRecord>(count);
+
+		for (int n = 0; n < count; n++)
+			records.add(new BenchRecord(key(distribution, n, count, rand), rand.nextInt(), rand.nextInt(), payload(rand)));
+
+		return records;
+	}
+
+	/**
+	 * Write a file of text lines.
+	 *
+	 * @param fileName     - the fully qualified file name
+	 * @param distribution - the order of the keys
+	 * @param count        - the number of lines
+	 * @param seed         - the Random seed
+	 * @throws IOException
+	 */
+	public static void writeText(String fileName, Distribution distribution, int count, long seed) throws IOException
+	{
+		Random rand = new Random(seed);
+
+		try (BufferedWriter writer = newWriter(fileName))
+		{
+			for (int n = 0; n < count; n++)
+			{
+				writer.write(textLine(key(distribution, n, count, rand), rand));
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Write a wide CSV file - the key is the first column.
+	 *
+	 * @param fileName     - the fully qualified file name
+	 * @param distribution - the order of the keys
+	 * @param count        - the number of records
+	 * @param columns      - the number of columns in each record
+	 * @param seed         - the Random seed
+	 * @throws IOException
+	 */
+	public static void writeCsv(String fileName, Distribution distribution, int count, int columns, long seed)
+			throws IOException
+	{
+		Random rand = new Random(seed);
+
+		try (BufferedWriter writer = newWriter(fileName))
+		{
+			for (int n = 0; n < count; n++)
+			{
+				writer.write(String.format("%019d", key(distribution, n, count, rand)));
+
+				for (int c = 1; c < columns; c++)
+				{
+					writer.write(',');
+					if (c % 4 == 0)
+						writer.write("\"" + payload(rand) + ", quoted\"");
+					else
+						writer.write(Integer.toString(rand.nextInt()));
+				}
+
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Write a file of serialized BenchRecords in the format read by ObjectSort.
+	 *
+	 * @param fileName     - the fully qualified file name
+	 * @param distribution - the order of the keys
+	 * @param count        - the number of records
+	 * @param seed         - the Random seed
+	 * @throws IOException
+	 */
+	public static void writeObjects(String fileName, Distribution distribution, int count, long seed) throws IOException
+	{
+		Random rand = new Random(seed);
+
+		try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(new File(fileName))))
+		{
+			for (int n = 0; n < count; n++)
+			{
+				out.writeUnshared(new BenchRecord(key(distribution, n, count, rand), rand.nextInt(), rand.nextInt(),
+																					payload(rand)));
+				out.reset();
+			}
+		}
+	}
+
+	private static BufferedWriter newWriter(String fileName) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(fileName)), Charset.defaultCharset()));
+	}
+
+	private static String payload(Random rand)
+	{
+		char[] chars = new char[PAYLOAD_LENGTH];
+
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = (char) ('a' + rand.nextInt(26));
+
+		return new String(chars);
+	}
+
+	/**
+	 * Create an empty temporary directory for a benchmark.
+	 *
+	 * @param prefix - the directory name prefix
+	 * @return File - the directory
+	 * @throws IOException
+	 */
+	public static File tempDir(String prefix) throws IOException
+	{
+		File dir = File.createTempFile(prefix, "");
+		if (!dir.delete() || !dir.mkdir())
+			throw new IOException("cannot create temp directory " + dir);
+
+		return dir;
+	}
+
+	/**
+	 * Delete a directory and its files.
+	 *
+	 * @param dir - the directory
+	 */
+	public static void deleteDir(File dir)
+	{
+		File[] files = dir.listFiles();
+
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				if (file.isDirectory())
+					deleteDir(file);
+				else
+					file.delete();
+			}
+		}
+
+		dir.delete();
+	}
+
+}
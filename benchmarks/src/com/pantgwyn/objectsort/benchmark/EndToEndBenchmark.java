@@ -0,0 +1,117 @@
+package com.pantgwyn.objectsort.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.pantgwyn.objectsort.CSVSort;
+import com.pantgwyn.objectsort.ObjectSort;
+import com.pantgwyn.objectsort.Sort;
+import com.pantgwyn.objectsort.TextSort;
+import com.pantgwyn.objectsort.benchmark.DataGenerator.Distribution;
+
+/**
+ * File to file sorts for each sort type at several sizes and memory factors.
+ * <p>
+ * Small memory factors force the sort to spill and merge.
+ *
+ * @author Dave Breeze
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx512m" })
+public class EndToEndBenchmark
+{
+
+	private static final int	CSV_COLUMNS	= 24;
+
+	@Param({ "TEXT", "CSV", "OBJECT" })
+	public String							type;
+
+	@Param({ "100000", "1000000" })
+	public int								size;
+
+	@Param({ "0.05", "0.5" })
+	public double							memoryFactor;
+
+	@Param({ "RANDOM", "PRESORTED", "REVERSE", "DUPLICATES" })
+	public Distribution				distribution;
+
+	private File							tempDir;
+	private String						sortIn;
+	private String						sortOut;
+	private String						workDir;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		tempDir	= DataGenerator.tempDir("endToEnd");
+		sortIn	= new File(tempDir, "sortIn").getPath();
+		sortOut	= new File(tempDir, "sortOut").getPath();
+		workDir	= new File(tempDir, "work").getPath();
+
+		switch (type)
+		{
+			case "CSV":
+				DataGenerator.writeCsv(sortIn, distribution, size, CSV_COLUMNS, DataGenerator.SEED);
+				break;
+			case "OBJECT":
+				DataGenerator.writeObjects(sortIn, distribution, size, DataGenerator.SEED);
+				break;
+			default:
+				DataGenerator.writeText(sortIn, distribution, size, DataGenerator.SEED);
+				break;
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		DataGenerator.deleteDir(tempDir);
+	}
+
+	@Benchmark
+	public long sort() throws ClassNotFoundException, IOException
+	{
+		Sort<?> sort;
+
+		switch (type)
+		{
+			case "CSV":
+				CSVSort csvSort = new CSVSort(memoryFactor);
+				csvSort.sort(sortIn, sortOut, Comparator.comparing((CSVRecord r) -> r.get(0)), workDir);
+				sort = csvSort;
+				break;
+			case "OBJECT":
+				ObjectSort<BenchRecord> objectSort = new ObjectSort<BenchRecord>(memoryFactor);
+				objectSort.sort(sortIn, sortOut, BenchRecord.KEY_ORDER, workDir);
+				sort = objectSort;
+				break;
+			default:
+				TextSort textSort = new TextSort(memoryFactor);
+				textSort.sort(sortIn, sortOut, Comparator.naturalOrder(), workDir);
+				sort = textSort;
+				break;
+		}
+
+		return sort.getRecordsRead();
+	}
+
+}
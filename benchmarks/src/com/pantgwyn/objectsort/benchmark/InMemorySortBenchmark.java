@@ -0,0 +1,87 @@
+package com.pantgwyn.objectsort.benchmark;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.pantgwyn.objectsort.ObjectSort;
+import com.pantgwyn.objectsort.TextSort;
+import com.pantgwyn.objectsort.benchmark.DataGenerator.Distribution;
+
+/**
+ * Sorts that complete in memory - callback input to callback output with a
+ * memory budget large enough that no work files are written.
+ *
+ * @author Dave Breeze
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class InMemorySortBenchmark
+{
+
+	private static final long	NO_SPILL_BUDGET	= 1L << 40;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int								size;
+
+	@Param({ "RANDOM", "PRESORTED", "REVERSE", "DUPLICATES" })
+	public Distribution				distribution;
+
+	private List<String>			lines;
+	private List<BenchRecord>	records;
+	private String						tempDir;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		lines		= DataGenerator.textLines(distribution, size, DataGenerator.SEED);
+		records	= DataGenerator.records(distribution, size, DataGenerator.SEED);
+		tempDir	= DataGenerator.tempDir("inMemorySort").getPath();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		DataGenerator.deleteDir(new java.io.File(tempDir));
+	}
+
+	@Benchmark
+	public boolean textSort(Blackhole blackhole) throws ClassNotFoundException, IOException
+	{
+		TextSort sort = new TextSort();
+		sort.setMemoryBudget(NO_SPILL_BUDGET);
+
+		Iterator<String> in = lines.iterator();
+		return sort.sort(() -> in.hasNext() ? in.next() : null, blackhole::consume, Comparator.naturalOrder(), tempDir);
+	}
+
+	@Benchmark
+	public boolean objectSort(Blackhole blackhole) throws ClassNotFoundException, IOException
+	{
+		ObjectSort<BenchRecord> sort = new ObjectSort<BenchRecord>();
+		sort.setMemoryBudget(NO_SPILL_BUDGET);
+
+		Iterator<BenchRecord> in = records.iterator();
+		return sort.sort(() -> in.hasNext() ? in.next() : null, blackhole::consume, BenchRecord.KEY_ORDER, tempDir);
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.pantgwyn.objectsort.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.pantgwyn.objectsort.FileWrapper;
+import com.pantgwyn.objectsort.TextSort;
+import com.pantgwyn.objectsort.benchmark.DataGenerator.Distribution;
+
+/**
+ * The k-way merge of sorted text work files into an output callback.
+ *
+ * @author Dave Breeze
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx1g" })
+public class MergeBenchmark
+{
+
+	@Param({ "2", "8", "32" })
+	public int							runs;
+
+	@Param({ "1000000" })
+	public int							totalRecords;
+
+	private File						tempDir;
+	private List<File>			pristineRuns;
+	private List<String>		runNames;
+
+	/**
+	 * Exposes the merge of a TextSort.
+	 */
+	private static class MergeRunner extends TextSort
+	{
+		void mergeRuns(List<String> runNames, Blackhole blackhole) throws IOException, ClassNotFoundException
+		{
+			List<FileWrapper<String>> mergeFiles = new ArrayList<FileWrapper<String>>();
+			for (String runName : runNames)
+				mergeFiles.add(new FileWrapper<String>(FileWrapper.Type.TEXT, runName));
+
+			merge(new FileWrapper<String>(FileWrapper.Type.TEXT, blackhole::consume), mergeFiles,
+						Comparator.naturalOrder());
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException
+	{
+		tempDir				= DataGenerator.tempDir("merge");
+		pristineRuns	= new ArrayList<File>();
+		runNames			= new ArrayList<String>();
+
+		int perRun = totalRecords / runs;
+
+		for (int r = 0; r < runs; r++)
+		{
+			List<String> lines = DataGenerator.textLines(Distribution.RANDOM, perRun, DataGenerator.SEED + r);
+			Collections.sort(lines);
+
+			File run = new File(tempDir, "pristine" + r);
+			Files.write(run.toPath(), lines);
+			pristineRuns.add(run);
+			runNames.add(new File(tempDir, "run" + r).getPath());
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void copyRuns() throws IOException
+	{
+		// the merge deletes its input files
+		for (int r = 0; r < runs; r++)
+			Files.copy(pristineRuns.get(r).toPath(), new File(runNames.get(r)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		DataGenerator.deleteDir(tempDir);
+	}
+
+	@Benchmark
+	public void merge(Blackhole blackhole) throws IOException, ClassNotFoundException
+	{
+		new MergeRunner().mergeRuns(runNames, blackhole);
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.pantgwyn.objectsort.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.pantgwyn.objectsort.FileWrapper;
+import com.pantgwyn.objectsort.benchmark.DataGenerator.Distribution;
+
+/**
+ * Writing one sorted in-memory run to a work file.
+ *
+ * @author Dave Breeze
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class SpillBenchmark
+{
+
+	@Param({ "10000", "100000", "1000000" })
+	public int								size;
+
+	private List<String>			sortedLines;
+	private List<BenchRecord>	sortedRecords;
+	private List<String>			lineRun;
+	private List<BenchRecord>	recordRun;
+	private File							tempDir;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		sortedLines = DataGenerator.textLines(Distribution.RANDOM, size, DataGenerator.SEED);
+		Collections.sort(sortedLines);
+
+		sortedRecords = DataGenerator.records(Distribution.RANDOM, size, DataGenerator.SEED);
+		sortedRecords.sort(BenchRecord.KEY_ORDER);
+
+		tempDir = DataGenerator.tempDir("spill");
+	}
+
+	@Setup(Level.Invocation)
+	public void copyRun()
+	{
+		// pushData clears the list it writes
+		lineRun		= new ArrayList<String>(sortedLines);
+		recordRun	= new ArrayList<BenchRecord>(sortedRecords);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		DataGenerator.deleteDir(tempDir);
+	}
+
+	@Benchmark
+	public long textRun() throws IOException
+	{
+		FileWrapper<String> workFile = new FileWrapper<String>(FileWrapper.Type.TEXT,
+																														new File(tempDir, "textRun").getPath());
+		workFile.startOutStream();
+		workFile.pushData(lineRun);
+		workFile.stopOutStream();
+
+		return workFile.getBytesWritten();
+	}
+
+	@Benchmark
+	public long objectRun() throws IOException
+	{
+		FileWrapper<BenchRecord> workFile = new FileWrapper<BenchRecord>(FileWrapper.Type.OBJECT,
+																																			new File(tempDir, "objectRun").getPath());
+		workFile.startOutStream();
+		workFile.pushData(recordRun);
+		workFile.stopOutStream();
+
+		return workFile.getBytesWritten();
+	}
+
+}
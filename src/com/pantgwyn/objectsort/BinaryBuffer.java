@@ -0,0 +1,235 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A run of fixed length binary records held in one byte array, as filled,
+ * sorted and spilled by BinarySort.
+ * <p>
+ * The records are never moved. The sort orders an index of record numbers,
+ * comparing the records in place in the array, so a record costs its length
+ * plus 8 bytes for the index and the merge space, with no object of its own.
+ *
+ * @author Dave Breeze
+ *
+ */
+class BinaryBuffer
+{
+
+	private static final int	INSERTION_SORT_LIMIT	= 16;
+
+	private final int					recordLength;
+	private final byte[]			records;
+	private final int[]				index;
+	private final int[]				work;
+	private int								count;
+	private long							comparisons;
+
+	/**
+	 * Constructor for BinaryBuffer
+	 *
+	 * @param recordLength - the length of each record in bytes
+	 * @param capacity     - the number of records the buffer holds
+	 */
+	BinaryBuffer(int recordLength, int capacity)
+	{
+		this.recordLength	= recordLength;
+		this.records			= new byte[Math.multiplyExact(recordLength, capacity)];
+		this.index				= new int[capacity];
+		this.work					= new int[capacity];
+	}
+
+	/**
+	 * @param recordLength - the length of each record in bytes
+	 * @return int - the most records one buffer can hold
+	 */
+	static int maxCapacity(int recordLength)
+	{
+		// the largest array most virtual machines will allocate
+		return (Integer.MAX_VALUE - 8) / recordLength;
+	}
+
+	/**
+	 * @param recordLength - the length of each record in bytes
+	 * @return long - the bytes of memory a record of the buffer costs
+	 */
+	static long recordBytes(int recordLength)
+	{
+		return recordLength + 2L * Integer.BYTES;
+	}
+
+	/**
+	 * Fill the buffer from a BINARY file, replacing the records it held.
+	 *
+	 * @param in - the file, with its input stream started
+	 * @return int - the records read, less than the capacity only at the end of
+	 *         the file
+	 * @throws IOException - if the file ends with a partial record
+	 */
+	int fill(FileWrapper<byte[]> in) throws IOException
+	{
+		count = in.read(records, 0, records.length) / recordLength;
+
+		return count;
+	}
+
+	/**
+	 * Skip records at the start of a BINARY file, reading them into the buffer.
+	 *
+	 * @param in   - the file, with its input stream started
+	 * @param skip - the number of records to skip
+	 * @throws IOException - if the file ends with a partial record
+	 */
+	void skip(FileWrapper<byte[]> in, long skip) throws IOException
+	{
+		while (skip > 0)
+		{
+			int read = in.read(records, 0, (int) Math.min(skip, index.length) * recordLength) / recordLength;
+			if (read == 0)
+				break;
+
+			skip -= read;
+		}
+
+		count = 0;
+	}
+
+	/**
+	 * Sort the index of the records, which stays stable for equal records.
+	 *
+	 * @param comparator - compares the records in place
+	 * @return long - the comparisons made
+	 */
+	long sort(BinaryComparator comparator)
+	{
+		comparisons = 0;
+
+		for (int i = 0; i < count; i++)
+			index[i] = i;
+		System.arraycopy(index, 0, work, 0, count);
+
+		mergeSort(work, index, 0, count, comparator);
+
+		return comparisons;
+	}
+
+	/**
+	 * Sort dest[low, high), using src, which holds the same record numbers, as
+	 * the merge space.
+	 */
+	private void mergeSort(int[] src, int[] dest, int low, int high, BinaryComparator comparator)
+	{
+		if (high - low < INSERTION_SORT_LIMIT)
+		{
+			for (int i = low + 1; i < high; i++)
+			{
+				int	record	= dest[i];
+				int	j				= i;
+
+				for (; j > low && compare(dest[j - 1], record, comparator) > 0; j--)
+					dest[j] = dest[j - 1];
+
+				dest[j] = record;
+			}
+			return;
+		}
+
+		int mid = (low + high) >>> 1;
+		mergeSort(dest, src, low, mid, comparator);
+		mergeSort(dest, src, mid, high, comparator);
+
+		// the halves are already in order
+		if (compare(src[mid - 1], src[mid], comparator) <= 0)
+		{
+			System.arraycopy(src, low, dest, low, high - low);
+			return;
+		}
+
+		for (int i = low, p = low, q = mid; i < high; i++)
+		{
+			if (q >= high || (p < mid && compare(src[p], src[q], comparator) <= 0))
+				dest[i] = src[p++];
+			else
+				dest[i] = src[q++];
+		}
+	}
+
+	private int compare(int a, int b, BinaryComparator comparator)
+	{
+		comparisons++;
+
+		return comparator.compare(records, a * recordLength, records, b * recordLength);
+	}
+
+	/**
+	 * Write the records in sorted order.
+	 *
+	 * @param out - the file or callback, with its output stream started
+	 * @throws IOException
+	 */
+	void writeTo(FileWrapper<byte[]> out) throws IOException
+	{
+		for (int i = 0; i < count; i++)
+			out.write(records, index[i] * recordLength, recordLength);
+	}
+
+	/**
+	 * @return int - the records held
+	 */
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * @return boolean - true if no more records fit
+	 */
+	boolean isFull()
+	{
+		return count == index.length;
+	}
+
+	/**
+	 * @return long - the bytes of memory the buffer holds
+	 */
+	long bytes()
+	{
+		return records.length + 2L * Integer.BYTES * index.length;
+	}
+
+	/**
+	 * @return List - the sorted records, each copied out of the buffer as it is
+	 *         read, for keeping the buffer as a run in memory
+	 */
+	List<byte[]> asList()
+	{
+		return new SortedView();
+	}
+
+	private class SortedView extends AbstractList<byte[]> implements RandomAccess
+	{
+
+		@Override
+		public byte[] get(int i)
+		{
+			if (i < 0 || i >= count)
+				throw new IndexOutOfBoundsException("record " + i + " of " + count);
+
+			int from = index[i] * recordLength;
+
+			return Arrays.copyOfRange(records, from, from + recordLength);
+		}
+
+		@Override
+		public int size()
+		{
+			return count;
+		}
+
+	}
+
+}
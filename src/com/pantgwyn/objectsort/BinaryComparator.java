@@ -0,0 +1,34 @@
+package com.pantgwyn.objectsort;
+
+import java.util.Comparator;
+
+/**
+ * A Comparator of fixed length binary records that can also compare records
+ * in place in a larger buffer, as BinarySort does when it sorts a run held in
+ * one byte array.
+ *
+ * @author Dave Breeze
+ *
+ */
+public interface BinaryComparator extends Comparator<byte[]>
+{
+
+	/**
+	 * Compare two records in place.
+	 *
+	 * @param a       - the buffer holding the first record
+	 * @param offsetA - the offset of the first record in a
+	 * @param b       - the buffer holding the second record
+	 * @param offsetB - the offset of the second record in b
+	 * @return int - negative, zero or positive as the first record sorts before,
+	 *         with or after the second
+	 */
+	public int compare(byte[] a, int offsetA, byte[] b, int offsetB);
+
+	@Override
+	public default int compare(byte[] a, byte[] b)
+	{
+		return compare(a, 0, b, 0);
+	}
+
+}
@@ -0,0 +1,215 @@
+package com.pantgwyn.objectsort;
+
+/**
+ * A key field of a fixed length binary record, as sorted by BinarySort.
+ * <p>
+ * The field is compared in place in the record without being decoded into an
+ * object. UNSIGNED fields compare as unsigned big-endian integers or byte
+ * strings, SIGNED fields as two's complement big-endian integers and BCD
+ * fields as packed decimals, two digits a byte with the sign in the last
+ * nibble (0xD or 0xB negative, anything else positive).
+ *
+ * @author Dave Breeze
+ *
+ */
+public class BinaryKey
+{
+
+	private final int			offset;
+	private final int			length;
+	private final Format	format;
+	private final boolean	ascending;
+
+	/**
+	 * Constructor for BinaryKey
+	 *
+	 * @param offset    - the offset of the field in the record
+	 * @param length    - the length of the field in bytes
+	 * @param format    - how the field is compared
+	 * @param ascending - false to sort the field in descending order
+	 */
+	public BinaryKey(int offset, int length, Format format, boolean ascending)
+	{
+		if (offset < 0 || length <= 0)
+			throw new IllegalArgumentException("invalid key offset " + offset + " length " + length);
+
+		this.offset			= offset;
+		this.length			= length;
+		this.format			= format;
+		this.ascending	= ascending;
+	}
+
+	/**
+	 * Constructor for an ascending BinaryKey
+	 *
+	 * @param offset - the offset of the field in the record
+	 * @param length - the length of the field in bytes
+	 * @param format - how the field is compared
+	 */
+	public BinaryKey(int offset, int length, Format format)
+	{
+		this(offset, length, format, true);
+	}
+
+	/**
+	 * @param keys - the key fields, most significant first
+	 * @return BinaryComparator - compares records on the key fields
+	 */
+	public static BinaryComparator comparator(BinaryKey... keys)
+	{
+		BinaryKey[] fields = keys.clone();
+
+		return (a, offsetA, b, offsetB) -> {
+			for (BinaryKey key : fields)
+			{
+				int result = key.compare(a, offsetA, b, offsetB);
+				if (result != 0)
+					return result;
+			}
+			return 0;
+		};
+	}
+
+	/**
+	 * Compare this field of two records.
+	 *
+	 * @param a - the first record
+	 * @param b - the second record
+	 * @return int - negative, zero or positive as a sorts before, with or after b
+	 */
+	public int compare(byte[] a, byte[] b)
+	{
+		return compare(a, 0, b, 0);
+	}
+
+	/**
+	 * Compare this field of two records held in larger buffers.
+	 *
+	 * @param a       - the buffer holding the first record
+	 * @param offsetA - the offset of the first record in a
+	 * @param b       - the buffer holding the second record
+	 * @param offsetB - the offset of the second record in b
+	 * @return int - negative, zero or positive as the first record sorts before,
+	 *         with or after the second
+	 */
+	public int compare(byte[] a, int offsetA, byte[] b, int offsetB)
+	{
+		int	fieldA	= offsetA + offset;
+		int	fieldB	= offsetB + offset;
+		int	result;
+
+		switch (format)
+		{
+			case SIGNED:
+				result = Byte.compare(a[fieldA], b[fieldB]);
+				if (result == 0)
+					result = compareUnsigned(a, fieldA + 1, b, fieldB + 1, length - 1);
+				break;
+			case BCD:
+				result = compareBcd(a, fieldA, b, fieldB);
+				break;
+			default:
+				result = compareUnsigned(a, fieldA, b, fieldB, length);
+				break;
+		}
+
+		return ascending ? result : -result;
+	}
+
+	private static int compareUnsigned(byte[] a, int fromA, byte[] b, int fromB, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if (a[fromA + i] != b[fromB + i])
+				return Integer.compare(a[fromA + i] & 0xff, b[fromB + i] & 0xff);
+		}
+
+		return 0;
+	}
+
+	private int compareBcd(byte[] a, int fieldA, byte[] b, int fieldB)
+	{
+		boolean	negativeA	= isNegative(a[fieldA + length - 1]);
+		boolean	negativeB	= isNegative(b[fieldB + length - 1]);
+
+		if (negativeA != negativeB)
+		{
+			// -0 and +0 are equal
+			if (isZero(a, fieldA) && isZero(b, fieldB))
+				return 0;
+
+			return negativeA ? -1 : 1;
+		}
+
+		// the digits are in the high nibble of the last byte, above the sign
+		int result = compareUnsigned(a, fieldA, b, fieldB, length - 1);
+		if (result == 0)
+			result = Integer.compare(a[fieldA + length - 1] & 0xf0, b[fieldB + length - 1] & 0xf0);
+
+		return negativeA ? -result : result;
+	}
+
+	private static boolean isNegative(byte last)
+	{
+		int sign = last & 0x0f;
+
+		return sign == 0x0d || sign == 0x0b;
+	}
+
+	private boolean isZero(byte[] record, int field)
+	{
+		for (int i = field; i < field + length - 1; i++)
+		{
+			if (record[i] != 0)
+				return false;
+		}
+
+		return (record[field + length - 1] & 0xf0) == 0;
+	}
+
+	/**
+	 * @return int - the offset of the field in the record
+	 */
+	public int getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * @return int - the length of the field in bytes
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * @return Format - how the field is compared
+	 */
+	public Format getFormat()
+	{
+		return format;
+	}
+
+	/**
+	 * @return boolean - true if the field sorts in ascending order
+	 */
+	public boolean isAscending()
+	{
+		return ascending;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "offset:" + offset + " length:" + length + " " + format + (ascending ? " ascending" : " descending");
+	}
+
+	public enum Format
+	{
+		UNSIGNED,
+		SIGNED,
+		BCD;
+	}
+
+}
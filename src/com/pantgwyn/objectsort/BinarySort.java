@@ -0,0 +1,270 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import com.pantgwyn.objectsort.FileWrapper.Type;
+
+/**
+ * Class for performing a sort of fixed length binary records.
+ * <p>
+ * Records are read, spilled and written as raw bytes with no serialization.
+ * Keys are compared in place in the record, for example with a comparator from
+ * BinaryKey.comparator.
+ * <p>
+ * With a BinaryComparator each run is read into one large byte array and
+ * sorted through an index of record offsets, see BinaryBuffer, so a record in
+ * memory costs its length plus 8 bytes and no object of its own. A filter,
+ * projection, reducer, record codec or natural run detection needs the records
+ * one at a time, so those sorts, and those with any other comparator, hold
+ * each record as a byte array of its own. Merges reuse the arrays they read.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class BinarySort extends Sort<byte[]>
+{
+
+	private final int					recordLength;
+	private BinaryComparator	binaryComparator;
+
+	/**
+	 * Constructor for class BinarySort
+	 * <p>
+	 * This will by default use 50% of the available memory and non verbose
+	 * messages.
+	 *
+	 * @param recordLength - the length of each record in bytes
+	 */
+	public BinarySort(int recordLength)
+	{
+		super();
+
+		this.recordLength = checkLength(recordLength);
+		setRecordReuse(true);
+	}
+
+	/**
+	 * Constructor for class BinarySort
+	 *
+	 * @param recordLength - the length of each record in bytes
+	 * @param memoryFactor - the fraction of available memory to use, less than 1
+	 * @param verbose      - a boolean that controls verbose messaging
+	 */
+	public BinarySort(int recordLength, double memoryFactor, boolean verbose)
+	{
+		super(memoryFactor, verbose);
+
+		this.recordLength = checkLength(recordLength);
+		setRecordReuse(true);
+	}
+
+	/**
+	 * Constructor for class BinarySort
+	 *
+	 * @param recordLength - the length of each record in bytes
+	 * @param memoryFactor - the fraction of available memory to use, less than 1
+	 */
+	public BinarySort(int recordLength, double memoryFactor)
+	{
+		super(memoryFactor);
+
+		this.recordLength = checkLength(recordLength);
+		setRecordReuse(true);
+	}
+
+	private static int checkLength(int recordLength)
+	{
+		if (recordLength <= 0)
+			throw new IllegalArgumentException("record length must be positive: " + recordLength);
+
+		return recordLength;
+	}
+
+	/**
+	 * @return int - the length of each record in bytes
+	 */
+	public int getRecordLength()
+	{
+		return recordLength;
+	}
+
+	/**
+	 * @param keys - the key fields, most significant first
+	 * @return BinaryComparator - compares records on the key fields
+	 */
+	public BinaryComparator comparator(BinaryKey... keys)
+	{
+		for (BinaryKey key : keys)
+		{
+			if (key.getOffset() + key.getLength() > recordLength)
+				throw new IllegalArgumentException("key " + key + " is beyond the record length " + recordLength);
+		}
+
+		return BinaryKey.comparator(keys);
+	}
+
+	@Override
+	protected Type getSortType()
+	{
+		return FileWrapper.Type.BINARY;
+	}
+
+	@Override
+	protected FileWrapper<byte[]> newFileWrapper(String fileName)
+	{
+		FileWrapper<byte[]> file = super.newFileWrapper(fileName);
+		file.setRecordLength(recordLength);
+
+		return file;
+	}
+
+	@Override
+	protected FileWrapper<byte[]> newFileWrapper(String fileName, long rangeStart, long rangeEnd)
+	{
+		FileWrapper<byte[]> file = super.newFileWrapper(fileName, rangeStart, rangeEnd);
+		file.setRecordLength(recordLength);
+
+		return file;
+	}
+
+	@Override
+	protected String cacheSettings()
+	{
+		String settings = super.cacheSettings();
+
+		return settings == null ? null : settings + ":length=" + recordLength;
+	}
+
+	@Override
+	protected boolean startRuns(
+															Comparator<byte[]> comparator,
+															List<String> tempDirs)
+	{
+		// the comparator is wrapped to count comparisons, so is captured here
+		binaryComparator = comparator instanceof BinaryComparator ? (BinaryComparator) comparator : null;
+
+		return super.startRuns(comparator, tempDirs);
+	}
+
+	/**
+	 * Read sortin a buffer at a time, each buffer holding a run in one byte
+	 * array, if the records need not be handled one at a time.
+	 */
+	@Override
+	protected void readInput(long skipRecords) throws ClassNotFoundException,
+																							IOException
+	{
+		if (binaryComparator == null || sortIn.getFileName() == null || filter != null || projection != null
+				|| reducer != null || recordCodec != null || naturalRunStreams > 0)
+		{
+			super.readInput(skipRecords);
+			return;
+		}
+
+		sortIn.startInStream();
+
+		BinaryBuffer buffer = new BinaryBuffer(recordLength, bufferCapacity());
+		buffer.skip(sortIn, skipRecords);
+
+		boolean last = false;
+
+		while (!last)
+		{
+			if (buffer == null)
+				buffer = new BinaryBuffer(recordLength, bufferCapacity());
+
+			phaseStart = System.nanoTime();
+			int records = buffer.fill(sortIn);
+			last = !buffer.isFull();
+
+			recordsRead += records;
+			stats.addRecordsRead(records);
+			stats.bufferFilled(records, (long) records * recordLength);
+			phaseCompleted(SortStats.Phase.INGEST, phaseStart);
+
+			boolean noRuns = workFileList.isEmpty() && memoryRuns.isEmpty();
+
+			if (records == 0 && !(noRuns && sortOut != null && sortOut.getFileName() != null))
+				break;
+
+			phaseStart = System.nanoTime();
+			stats.addComparisons(buffer.sort(binaryComparator));
+			phaseCompleted(SortStats.Phase.RUN_SORT, phaseStart);
+
+			if (last && noRuns && sortOut != null && sortOut.getFileName() != null)
+			{
+				// the input fitted in one buffer
+				phaseStart = System.nanoTime();
+				sortOut.startOutStream();
+				buffer.writeTo(sortOut);
+				sortOut.stopOutStream();
+				stats.addRecordsWritten(sortOut.getRecordsWritten());
+				phaseCompleted(SortStats.Phase.OUTPUT, phaseStart);
+
+				outputComplete = true;
+			} else if (reserveMemoryRun(buffer.bytes(), last))
+			{
+				addMemoryRun(buffer.asList());
+				buffer = null;
+			} else
+			{
+				spillBuffer(buffer);
+				checkWorkFileLimit();
+				saveCheckpoint(false);
+			}
+		}
+
+		sortIn.stopInStream();
+		stats.setInputBytes(sortIn.getBytesRead());
+
+		phaseStart = System.nanoTime();
+		endRuns();
+	}
+
+	/**
+	 * @return int - the records a buffer holds within the memory budget, no
+	 *         more than an uncompressed sortin file holds
+	 */
+	private int bufferCapacity()
+	{
+		long bytes = getBufferLimit();
+		if (bytes <= 0)
+			bytes = (long) (getAvailableMemory() * Math.min(memoryFactor, 1));
+
+		long capacity = Math.min(bytes / BinaryBuffer.recordBytes(recordLength), BinaryBuffer.maxCapacity(recordLength));
+
+		// a buffer one record larger than the file is filled without reading past
+		// the end of the file
+		if (sortIn.getCodec() == null)
+			capacity = Math.min(capacity, sortIn.getInputLength() / recordLength + 1);
+
+		return (int) Math.max(1, capacity);
+	}
+
+	private void spillBuffer(BinaryBuffer buffer) throws IOException
+	{
+		long									phaseStart	= System.nanoTime();
+		FileWrapper<byte[]>	workFile		= getNextWorkFile(workDirs.nextDir());
+		workFileList.add(workFile);
+		workFile.startOutStream();
+		buffer.writeTo(workFile);
+		workFile.stopOutStream();
+
+		stats.runCreated();
+		stats.addBytesSpilled(workFile.getBytesWritten());
+		phaseCompleted(SortStats.Phase.SPILL, phaseStart);
+
+		LOG.log(logLevel, "spilled run of " + buffer.size() + " records to " + workFile.getFileName());
+
+		for (SortListener listener : listeners)
+			listener.runSpilled(workFile.getFileName(), buffer.size(), workFile.getBytesWritten());
+	}
+
+	@Override
+	protected long estimateSize(byte[] record)
+	{
+		return 24 + ((record.length + 7) & ~7L);
+	}
+
+}
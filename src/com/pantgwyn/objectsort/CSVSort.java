@@ -1,5 +1,12 @@
 package com.pantgwyn.objectsort;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
 import com.pantgwyn.objectsort.FileWrapper.Type;
@@ -19,6 +26,7 @@ import com.pantgwyn.objectsort.FileWrapper.Type;
 
 public class CSVSort extends Sort<CSVRecord>
 {
+
 	/**
 	 * Default constructor for class ObjectSort
 	 * <p>
@@ -71,10 +79,118 @@ public class CSVSort extends Sort<CSVRecord>
 
 	}
 
+	/**
+	 * Keep only some columns of each record, in the order given. The columns
+	 * are dropped as each record is read, before it is buffered or spilled, so
+	 * the comparator and the output see the projected record, with the kept
+	 * columns numbered from 0. This sets the projection of the sort.
+	 *
+	 * @param columns - the 0 based columns to keep, none to keep all columns
+	 */
+	public void setColumns(int... columns)
+	{
+		if (columns == null || columns.length == 0)
+		{
+			setProjection(null);
+			return;
+		}
+
+		int[] kept = columns.clone();
+		setProjection(new Projection(kept), "columns" + Arrays.toString(kept));
+	}
+
+	/**
+	 * Makes the projected record of each record read. CSVRecord has no public
+	 * constructor, so the kept values are formatted and parsed back. A record
+	 * with a header keeps the names of the kept columns, so get(String) still
+	 * works on the projected record.
+	 */
+	private static class Projection implements UnaryOperator<CSVRecord>
+	{
+		private final int[]			columns;
+		private volatile Source	source	= new Source(null, CSVFormat.DEFAULT);
+
+		Projection(int[] columns)
+		{
+			this.columns = columns;
+		}
+
+		@Override
+		public CSVRecord apply(CSVRecord record)
+		{
+			Object[] values = new Object[columns.length];
+
+			for (int i = 0; i < columns.length; i++)
+				values[i] = columns[i] < record.size() ? record.get(columns[i]) : "";
+
+			// the header only changes with the parser the records come from, and
+			// records may be projected on several threads at once
+			Source current = source;
+			if (record.getParser() != current.parser)
+			{
+				current	= new Source(record.getParser(), projectedFormat(record.getParser()));
+				source	= current;
+			}
+
+			try (CSVParser parser = CSVParser.parse(CSVFormat.DEFAULT.format(values), current.format))
+			{
+				return parser.iterator().next();
+			} catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * @return CSVFormat - the format to parse the projected record with, with
+		 *         the names of the kept columns as its header if the source has one
+		 */
+		private CSVFormat projectedFormat(CSVParser parser)
+		{
+			List<String> names = parser == null ? null : parser.getHeaderNames();
+
+			if (names == null || names.isEmpty())
+				return CSVFormat.DEFAULT;
+
+			String[] header = new String[columns.length];
+
+			for (int i = 0; i < columns.length; i++)
+				header[i] = columns[i] < names.size() ? names.get(columns[i]) : String.valueOf(columns[i]);
+
+			return CSVFormat.DEFAULT.withHeader(header);
+		}
+	}
+
+	/**
+	 * The parser that records come from, with the format of their projections.
+	 */
+	private static class Source
+	{
+		private final CSVParser	parser;
+		private final CSVFormat	format;
+
+		Source(CSVParser parser, CSVFormat format)
+		{
+			this.parser	= parser;
+			this.format	= format;
+		}
+	}
+
 	@Override
 	protected Type getSortType()
 	{
 		return FileWrapper.Type.CSV;
 	}
 
+	@Override
+	protected long estimateSize(CSVRecord record)
+	{
+		long size = 80;
+
+		for (String value : record)
+			size += 48 + 2L * value.length();
+
+		return size;
+	}
+
 }
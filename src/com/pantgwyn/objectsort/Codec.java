@@ -0,0 +1,48 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Interface for a compression format used by sortin, sortout and work files.
+ * <p>
+ * A codec is chosen for a sortin or sortout file by its extension, or for a
+ * sortin file by the magic bytes at its start if Sort.setDetectInputCodec is
+ * set. Work files use the codec set by Sort.setWorkFileCodec, if any.
+ * Implementations are registered with Codecs.register.
+ * 
+ * @author Dave Breeze
+ *
+ */
+public interface Codec
+{
+	/**
+	 * @return String - the file name extension of the format, e.g. ".gz"
+	 */
+	public String getExtension();
+
+	/**
+	 * Check the first bytes of a file for the magic number of the format.
+	 * 
+	 * @param header - the first bytes of the file
+	 * @param length - the number of bytes in header, may be fewer than its size
+	 * @return true if the file is in this format
+	 */
+	public boolean matches(byte[] header, int length);
+
+	/**
+	 * @param in - the compressed stream
+	 * @return InputStream - the decompressed data
+	 * @throws IOException
+	 */
+	public InputStream decompress(InputStream in) throws IOException;
+
+	/**
+	 * @param out - the stream to receive compressed data
+	 * @return OutputStream - the stream accepting uncompressed data
+	 * @throws IOException
+	 */
+	public OutputStream compress(OutputStream out) throws IOException;
+
+}
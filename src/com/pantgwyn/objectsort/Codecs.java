@@ -0,0 +1,95 @@
+package com.pantgwyn.objectsort;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The registered compression codecs. Gzip is registered by default.
+ * 
+ * @author Dave Breeze
+ *
+ */
+public final class Codecs
+{
+
+	private static final int					HEADER_LENGTH	= 8;
+	private static final List<Codec>	codecs				= new CopyOnWriteArrayList<Codec>();
+
+	static
+	{
+		codecs.add(new GzipCodec());
+	}
+
+	private Codecs()
+	{
+	}
+
+	/**
+	 * Register a codec so that files in its format are recognised. Later
+	 * registrations take precedence.
+	 * 
+	 * @param codec - the codec
+	 */
+	public static void register(Codec codec)
+	{
+		codecs.add(0, codec);
+	}
+
+	/**
+	 * Find the codec for a file name by its extension.
+	 * 
+	 * @param fileName - the file name
+	 * @return Codec - the codec, or null if the name has no codec extension
+	 */
+	public static Codec forName(String fileName)
+	{
+		if (fileName == null)
+			return null;
+
+		for (Codec codec : codecs)
+		{
+			if (fileName.endsWith(codec.getExtension()))
+				return codec;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Find the codec for an existing file by its extension or, failing that, by
+	 * the magic bytes at its start.
+	 * 
+	 * @param fileName - the fully qualified file name
+	 * @return Codec - the codec, or null if the file is not compressed
+	 * @throws IOException
+	 */
+	public static Codec detect(String fileName) throws IOException
+	{
+		Codec codec = forName(fileName);
+		if (codec != null)
+			return codec;
+
+		byte[]	header	= new byte[HEADER_LENGTH];
+		int			length	= 0;
+
+		try (InputStream in = new FileInputStream(new File(fileName)))
+		{
+			int read;
+			while (length < header.length && (read = in.read(header, length, header.length - length)) > 0)
+				length += read;
+		}
+
+		for (Codec candidate : codecs)
+		{
+			if (candidate.matches(header, length))
+				return candidate;
+		}
+
+		return null;
+	}
+
+}
@@ -1,22 +1,34 @@
 package com.pantgwyn.objectsort;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
@@ -42,8 +54,9 @@ public class FileWrapper<T>
 	private InputStream							inStream					= null;
 	private OutputStream						outStream					= null;
 	private T												currentInputItem	= null;
-	private BufferedReader					bufferedReader		= null;
 	private BufferedWriter					bufferedWriter		= null;
+	private LineReader							lineReader				= null;
+	private LineSource							lineSource				= null;
 	private Type										type;
 	private Destination							outDestination;
 	private Destination							inSource;
@@ -51,6 +64,21 @@ public class FileWrapper<T>
 	private SortOutCallback<T>			outCallback				= null;
 	private CSVPrinter							csvPrinter				= null;
 	private Spliterator<CSVRecord>	csvIterator				= null;
+	private long										bytesRead					= 0;
+	private long										bytesWritten			= 0;
+	private long										recordsWritten		= 0;
+	private List<T>									memoryRun					= null;
+	private Iterator<T>							memoryIterator		= null;
+	private long										rangeStart				= 0;
+	private long										rangeEnd					= -1;
+	private boolean									keepFile					= false;
+	private Codec										codec							= null;
+	private int											recordLength			= 0;
+	private Function<String, T>			lineParser				= null;
+	private RecordCodec<T>					recordCodec				= null;
+	private boolean									reuse							= false;
+	private long										itemOffset				= 0;
+	private long										readOffset				= 0;
 
 	/**
 	 * Constructor for FileWrapper
@@ -92,6 +120,42 @@ public class FileWrapper<T>
 
 	}
 
+	/**
+	 * Constructor for FileWrapper
+	 * <p>
+	 * Create an input only FileWrapper over a byte range of a file. The range
+	 * must start and end on record boundaries.
+	 * 
+	 * @param type       - the type of data being managed by the file
+	 * @param fileName   - the fully qualified filename of the FileWrapper
+	 * @param rangeStart - the offset of the first byte to read
+	 * @param rangeEnd   - the offset after the last byte to read
+	 */
+	public FileWrapper(Type type, String fileName, long rangeStart, long rangeEnd)
+	{
+		this(type, fileName, null, null);
+
+		this.rangeStart	= rangeStart;
+		this.rangeEnd		= rangeEnd;
+		outDestination	= Destination.NONE;
+	}
+
+	/**
+	 * Constructor for FileWrapper
+	 * <p>
+	 * Create an input only FileWrapper over a sorted run held in memory.
+	 * 
+	 * @param type      - the type of data being managed by the file
+	 * @param memoryRun - the sorted objects
+	 */
+	public FileWrapper(Type type, List<T> memoryRun)
+	{
+		this(type, null, null, null);
+
+		this.memoryRun	= memoryRun;
+		inSource				= Destination.MEMORY;
+	}
+
 	private FileWrapper(Type type, String fileName, SortInCallback<T> inCallback, SortOutCallback<T> outCallback)
 	{
 
@@ -122,6 +186,27 @@ public class FileWrapper<T>
 		return fileName;
 	}
 
+	/**
+	 * @return long - the bytes of the file, or of the range of it, to be read
+	 */
+	long getInputLength()
+	{
+		return rangeEnd >= 0 ? rangeEnd - rangeStart : new File(fileName).length();
+	}
+
+	/**
+	 * @return long - the byte offset in the file of the current input item, or
+	 *         of the end of the input once it has all been read - -1 for OBJECT
+	 *         and compressed files, whose records cannot be read from an offset
+	 */
+	public long getInputOffset()
+	{
+		if (inSource != Destination.FILE || type == Type.OBJECT || codec != null)
+			return -1;
+
+		return rangeStart + itemOffset;
+	}
+
 	/**
 	 * @param fileName String - fully qualified filename for the FileWrapper
 	 */
@@ -155,26 +240,56 @@ public class FileWrapper<T>
 
 		if (this.inSource == Destination.FILE)
 		{
-			FileInputStream inFileStream = new FileInputStream(new File(fileName));
+			bytesRead		= 0;
+			itemOffset	= 0;
+			readOffset	= 0;
+			FileInputStream	fileStream	= new FileInputStream(new File(fileName));
+			InputStream			rawStream		= fileStream;
 
-			switch (type)
+			if (rangeEnd >= 0)
+			{
+				fileStream.getChannel().position(rangeStart);
+				rawStream = new RangeInputStream(fileStream, rangeEnd - rangeStart);
+			}
+
+			InputStream inFileStream = new CountingInputStream(rawStream);
+
+			// the codec is known in advance - without one the file is not compressed
+			if (codec != null)
+				inFileStream = new ReadAheadInputStream(codec.decompress(new BufferedInputStream(inFileStream, BUFF_SIZE)));
+
+			// a record codec reads a data stream, as BINARY does
+			switch (recordCodec != null ? Type.BINARY : type)
 			{
 				case OBJECT:
 					inStream = new ObjectInputStream(inFileStream);
 					break;
 				case TEXT:
-					bufferedReader = new BufferedReader(new InputStreamReader(inFileStream));
+					inStream		= inFileStream;
+					lineReader	= new LineReader(inFileStream, Charset.defaultCharset());
 					break;
 				case CSV:
-					bufferedReader = new BufferedReader(new InputStreamReader(inFileStream));
-					CSVParser parser = new CSVParser(bufferedReader, CSVFormat.DEFAULT);
+					inStream		= inFileStream;
+					lineReader	= new LineReader(inFileStream, Charset.defaultCharset());
+					lineSource	= new LineSource(lineReader);
+					CSVParser parser = new CSVParser(lineSource, CSVFormat.DEFAULT);
 					csvIterator = parser.spliterator();
 					break;
+				case JSONL:
+					inStream		= inFileStream;
+					lineReader	= new LineReader(inFileStream, StandardCharsets.UTF_8);
+					break;
+				case BINARY:
+					inStream = new DataInputStream(new BufferedInputStream(inFileStream, BUFF_SIZE));
+					break;
 				default:
 					break;
 			}
 		}
 
+		if (inSource == Destination.MEMORY)
+			memoryIterator = memoryRun.iterator();
+
 		getNextInput();
 
 	}
@@ -193,7 +308,19 @@ public class FileWrapper<T>
 		if (outDestination != Destination.FILE)
 			return;
 
-		FileOutputStream outFileStream = new FileOutputStream(new File(fileName));
+		bytesWritten		= 0;
+		recordsWritten	= 0;
+		OutputStream	outFileStream	= new CountingOutputStream(new FileOutputStream(new File(fileName)));
+		Codec					outCodec			= codec != null ? codec : Codecs.forName(fileName);
+
+		if (outCodec != null)
+			outFileStream = outCodec.compress(outFileStream);
+
+		if (recordCodec != null)
+		{
+			outStream = new DataOutputStream(new BufferedOutputStream(outFileStream, BUFF_SIZE));
+			return;
+		}
 
 		switch (type)
 		{
@@ -206,6 +333,13 @@ public class FileWrapper<T>
 			case CSV:
 				bufferedWriter = new BufferedWriter(new OutputStreamWriter(outFileStream, Charset.defaultCharset()), BUFF_SIZE);
 				csvPrinter = new CSVPrinter(new BufferedWriter(bufferedWriter), CSVFormat.DEFAULT);
+				break;
+			case JSONL:
+				bufferedWriter = new BufferedWriter(new OutputStreamWriter(outFileStream, StandardCharsets.UTF_8), BUFF_SIZE);
+				break;
+			case BINARY:
+				outStream = new BufferedOutputStream(outFileStream, BUFF_SIZE);
+				break;
 			default:
 				break;
 		}
@@ -224,7 +358,8 @@ public class FileWrapper<T>
 		{
 			case FILE:
 
-				switch (type)
+				// a record codec writes a data stream, as BINARY does
+				switch (recordCodec != null ? Type.BINARY : type)
 				{
 					case CSV:
 						if (csvPrinter != null)
@@ -264,7 +399,7 @@ public class FileWrapper<T>
 	public void stopInStream() throws IOException
 	{
 		if (inSource == Destination.FILE)
-			Sort.close(inStream, bufferedReader);
+			Sort.close(inStream);
 	}
 
 	/**
@@ -285,18 +420,55 @@ public class FileWrapper<T>
 
 				try
 				{
+					if (recordCodec != null)
+					{
+						T target = reuse && currentInputItem != null ? currentInputItem : recordCodec.newRecord();
+
+						// only EOFException ends the file - any other error would silently
+						// truncate the run
+						try
+						{
+							recordCodec.readInto(target, (DataInputStream) inStream);
+							currentInputItem = target;
+						} catch (EOFException e)
+						{
+							currentInputItem = null;
+						} catch (IOException e)
+						{
+							throw new UncheckedIOException("cannot read a record from " + fileName, e);
+						}
+						break;
+					}
+
 					switch (type)
 					{
 						case OBJECT:
 							currentInputItem = (T) ((ObjectInputStream) inStream).readUnshared();
 							break;
 						case TEXT:
-							currentInputItem = (T) bufferedReader.readLine();
+							itemOffset				= lineReader.getOffset();
+							currentInputItem	= (T) stripLineEnd(lineReader.readLine());
 							break;
 						case CSV:
 							Consumer<? super CSVRecord> action = a -> currentInputItem = (T) a;
 							if (!csvIterator.tryAdvance(action))
 								currentInputItem = null;
+							itemOffset = currentInputItem == null ? lineReader.getOffset()
+									: lineSource.offsetOf(((CSVRecord) currentInputItem).getCharacterPosition());
+							break;
+						case JSONL:
+							itemOffset = lineReader.getOffset();
+							String line = lineReader.readLine();
+							currentInputItem = line == null ? null : lineParser.apply(line);
+							break;
+						case BINARY:
+							byte[]	record	= reuse && currentInputItem != null ? (byte[]) currentInputItem : new byte[recordLength];
+							int			count		= ((DataInputStream) inStream).readNBytes(record, 0, recordLength);
+							if (count > 0 && count < recordLength)
+								throw new UncheckedIOException(partialRecord(count));
+							itemOffset = readOffset;
+							readOffset += count;
+							currentInputItem = count == 0 ? null : (T) record;
 							break;
 						default:
 							break;
@@ -312,6 +484,9 @@ public class FileWrapper<T>
 			case CALLBACK:
 				currentInputItem = (T) inCallback.produceSortIn();
 				break;
+			case MEMORY:
+				currentInputItem = memoryIterator.hasNext() ? memoryIterator.next() : null;
+				break;
 			default:
 				currentInputItem = null;
 				break;
@@ -320,6 +495,114 @@ public class FileWrapper<T>
 
 	}
 
+	/**
+	 * Set the compression of the file. Without a codec a file is written
+	 * compressed when its name has the extension of a registered codec, but is
+	 * always read as uncompressed - the Sort sets the codec of a compressed
+	 * sortin file.
+	 * 
+	 * @param codec - the codec, or null for the default
+	 */
+	public void setCodec(Codec codec)
+	{
+		this.codec = codec;
+	}
+
+	/**
+	 * @return Codec - the codec set for the file, null if none is set
+	 */
+	public Codec getCodec()
+	{
+		return codec;
+	}
+
+	/**
+	 * Set the length of each record of a BINARY file.
+	 * 
+	 * @param recordLength - the record length in bytes
+	 */
+	public void setRecordLength(int recordLength)
+	{
+		this.recordLength = recordLength;
+	}
+
+	/**
+	 * @return int - the record length in bytes of a BINARY file
+	 */
+	public int getRecordLength()
+	{
+		return recordLength;
+	}
+
+	/**
+	 * Write and read the file with a record codec rather than the format of its
+	 * type.
+	 * 
+	 * @param recordCodec - the codec, or null for the format of the type
+	 */
+	public void setRecordCodec(RecordCodec<T> recordCodec)
+	{
+		this.recordCodec = recordCodec;
+	}
+
+	/**
+	 * @return RecordCodec - the record codec, null if the type's format is used
+	 */
+	public RecordCodec<T> getRecordCodec()
+	{
+		return recordCodec;
+	}
+
+	/**
+	 * Read each record into the previous record's instance, where the record
+	 * codec or type allows. The current input item is then only valid until
+	 * the next call of getNextInput.
+	 * 
+	 * @param reuse - true to reuse the current input item, default false
+	 */
+	public void setReuse(boolean reuse)
+	{
+		this.reuse = reuse;
+	}
+
+	/**
+	 * @return boolean - true if the output of this FileWrapper is a file, so
+	 *         each record is encoded as it is written
+	 */
+	boolean isFileOutput()
+	{
+		return outDestination == Destination.FILE;
+	}
+
+	/**
+	 * Set the function that makes a record from each line of a JSONL file.
+	 * 
+	 * @param lineParser - makes a record from a line
+	 */
+	public void setLineParser(Function<String, T> lineParser)
+	{
+		this.lineParser = lineParser;
+	}
+
+	/**
+	 * Keep the file when deleteFile is called. Used when a sortin file that is
+	 * already in order takes part in a merge as a run.
+	 * 
+	 * @param keepFile - true to keep the file after a merge
+	 */
+	public void setKeepFile(boolean keepFile)
+	{
+		this.keepFile = keepFile;
+	}
+
+	/**
+	 * @return boolean - true if the file is kept after a merge
+	 */
+	public boolean isKeepFile()
+	{
+		return keepFile;
+	}
+
 	/**
 	 * Delete the file from the io system
 	 * <p>
@@ -328,6 +611,16 @@ public class FileWrapper<T>
 	 */
 	public void deleteFile()
 	{
+		if (fileName == null)
+		{
+			memoryRun				= null;
+			memoryIterator	= null;
+			return;
+		}
+
+		if (keepFile)
+			return;
+
 		File file = new File(fileName);
 		file.delete();
 	}
@@ -336,22 +629,58 @@ public class FileWrapper<T>
 	{
 		OBJECT,
 		CSV,
-		TEXT;
+		TEXT,
+		BINARY,
+		JSONL;
 	}
 
 	private enum Destination
 	{
 		FILE,
 		CALLBACK,
+		MEMORY,
 		NONE;
 	}
 
+	/**
+	 * @return long - the bytes read from the file since the InputStream started
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * @return long - the bytes written to the file since the OutputStream started
+	 *         - complete once the OutputStream has stopped
+	 */
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/**
+	 * @return long - the objects written since the OutputStream started
+	 */
+	public long getRecordsWritten()
+	{
+		return recordsWritten;
+	}
+
 	public void write(T o) throws IOException
 	{
+		recordsWritten++;
+
 		switch (outDestination)
 		{
 			case FILE:
 
+				if (recordCodec != null)
+				{
+					recordCodec.write(o, (DataOutputStream) outStream);
+					break;
+				}
+
 				switch (type)
 				{
 					case OBJECT:
@@ -367,6 +696,16 @@ public class FileWrapper<T>
 						CSVRecord record = (CSVRecord) o;
 						csvPrinter.printRecord(record);
 						break;
+					case JSONL:
+						// the line keeps the ending it was read with
+						String text = ((JsonRecord) o).getText();
+						bufferedWriter.write(text);
+						if (!text.endsWith("\n"))
+							bufferedWriter.write('\n');
+						break;
+					case BINARY:
+						outStream.write((byte[]) o);
+						break;
 					default:
 						break;
 				}
@@ -385,12 +724,85 @@ public class FileWrapper<T>
 
 	}
 
+	/**
+	 * Read whole records of a BINARY file into a buffer, starting with the
+	 * current input item, which is taken.
+	 *
+	 * @param buffer - the buffer to read into
+	 * @param offset - the offset in the buffer of the first record
+	 * @param length - the bytes to read, a multiple of the record length
+	 * @return int - the bytes read, less than length only at the end of the file
+	 * @throws IOException - if the file ends with a partial record
+	 */
+	int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		int count = 0;
+
+		if (currentInputItem != null)
+		{
+			System.arraycopy(currentInputItem, 0, buffer, offset, recordLength);
+			currentInputItem	= null;
+			count							= recordLength;
+		}
+
+		int read = ((DataInputStream) inStream).readNBytes(buffer, offset + count, length - count);
+		count += read;
+		readOffset += read;
+		itemOffset = readOffset;
+
+		if (count % recordLength != 0)
+			throw partialRecord(count % recordLength);
+
+		return count;
+	}
+
+	private EOFException partialRecord(int count)
+	{
+		return new EOFException(fileName + " ends with a partial record of " + count + " bytes, the record length is "
+				+ recordLength);
+	}
+
+	/**
+	 * Write whole records of a BINARY file from a buffer. Other destinations are
+	 * passed a copy of each record.
+	 *
+	 * @param buffer - the buffer holding the records
+	 * @param offset - the offset in the buffer of the first record
+	 * @param length - the bytes to write, a multiple of the record length
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	void write(byte[] buffer, int offset, int length) throws IOException
+	{
+		if (outDestination == Destination.FILE && recordCodec == null)
+		{
+			outStream.write(buffer, offset, length);
+			recordsWritten += length / recordLength;
+			return;
+		}
+
+		for (int from = offset; from < offset + length; from += recordLength)
+			write((T) Arrays.copyOfRange(buffer, from, from + recordLength));
+	}
+
 	public void pushData(	List<T> objQueue,
 												Comparator<T> comparator)
 	{
 		
 		objQueue.sort(comparator);
 
+		pushData(objQueue);
+
+	}
+
+	/**
+	 * Write an already sorted list of objects and clear the list.
+	 * 
+	 * @param objQueue - the sorted objects
+	 */
+	public void pushData(List<T> objQueue)
+	{
+
 		for (T t:objQueue)
 		{
 			try
@@ -407,4 +819,320 @@ public class FileWrapper<T>
 
 	}
 
+	private class CountingInputStream extends FilterInputStream
+	{
+		CountingInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b >= 0)
+				bytesRead++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int count = super.read(b, off, len);
+			if (count > 0)
+				bytesRead += count;
+			return count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long count = super.skip(n);
+			bytesRead += count;
+			return count;
+		}
+	}
+
+	private class CountingOutputStream extends FilterOutputStream
+	{
+		CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			bytesWritten++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			bytesWritten += len;
+		}
+	}
+
+	private static class RangeInputStream extends FilterInputStream
+	{
+		private long remaining;
+
+		RangeInputStream(InputStream in, long length)
+		{
+			super(in);
+			remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			if (remaining <= 0)
+				return -1;
+
+			int b = super.read();
+			if (b >= 0)
+				remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (remaining <= 0)
+				return -1;
+
+			int count = super.read(b, off, (int) Math.min(len, remaining));
+			if (count > 0)
+				remaining -= count;
+			return count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long count = super.skip(Math.min(n, remaining));
+			remaining -= count;
+			return count;
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return (int) Math.min(super.available(), remaining);
+		}
+	}
+
+	/**
+	 * Reads the lines of a JSONL file with their line endings, so each line is
+	 * written out exactly as it was read.
+	 */
+	/**
+	 * @return String - the line without its line end, as BufferedReader.readLine
+	 *         returns it
+	 */
+	private static String stripLineEnd(String line)
+	{
+		if (line == null)
+			return null;
+
+		int end = line.length();
+		if (end > 0 && line.charAt(end - 1) == '\n')
+			end--;
+		if (end > 0 && line.charAt(end - 1) == '\r')
+			end--;
+
+		return line.substring(0, end);
+	}
+
+	/**
+	 * Reads the lines of a file as bytes and decodes each line on its own,
+	 * counting the bytes of the lines read so that the offset of the next line
+	 * is known. The charset must encode '\n' as the single byte it is in ASCII,
+	 * as the file ranges of a parallel read already assume.
+	 */
+	private static class LineReader
+	{
+		private final InputStream	in;
+		private final Charset			charset;
+		private final byte[]			buffer		= new byte[BUFF_SIZE];
+		private int								position	= 0;
+		private int								limit			= 0;
+		private byte[]						carry			= new byte[0];
+		private int								carried		= 0;
+		private long							offset		= 0;
+
+		LineReader(InputStream in, Charset charset)
+		{
+			this.in				= in;
+			this.charset	= charset;
+		}
+
+		/**
+		 * @return String - the next line up to and including its '\n', or null at
+		 *         the end of the file
+		 * @throws IOException
+		 */
+		String readLine() throws IOException
+		{
+			while (true)
+			{
+				if (position == limit)
+				{
+					position	= 0;
+					limit			= Math.max(in.read(buffer, 0, buffer.length), 0);
+					if (limit == 0)
+						return carried == 0 ? null : takeCarried();
+				}
+
+				int start = position;
+				while (position < limit && buffer[position] != '\n')
+					position++;
+
+				if (position < limit)
+				{
+					position++;
+					offset += position - start;
+					if (carried == 0)
+						return new String(buffer, start, position - start, charset);
+
+					carry(start, position - start);
+					return takeCarried();
+				}
+
+				// the line runs on past the buffer
+				offset += position - start;
+				carry(start, position - start);
+			}
+		}
+
+		private void carry(int start, int length)
+		{
+			if (carried + length > carry.length)
+				carry = Arrays.copyOf(carry, Math.max(2 * carry.length, carried + length));
+
+			System.arraycopy(buffer, start, carry, carried, length);
+			carried += length;
+		}
+
+		private String takeCarried()
+		{
+			String line = new String(carry, 0, carried, charset);
+			carried = 0;
+
+			return line;
+		}
+
+		/**
+		 * @return long - the bytes of the lines read so far
+		 */
+		long getOffset()
+		{
+			return offset;
+		}
+
+		Charset getCharset()
+		{
+			return charset;
+		}
+	}
+
+	/**
+	 * Feeds the lines of a LineReader to a CSVParser. The lines the parser has
+	 * read but not yet passed are kept, so that the byte offset of a record can
+	 * be found from its character position.
+	 */
+	private static class LineSource extends Reader
+	{
+		private final LineReader				lineReader;
+		private final ArrayDeque<Line>	lines			= new ArrayDeque<Line>();
+		private String									line			= "";
+		private int											position	= 0;
+		private long										chars			= 0;
+
+		LineSource(LineReader lineReader)
+		{
+			this.lineReader = lineReader;
+		}
+
+		@Override
+		public int read(char[] target, int offset, int length) throws IOException
+		{
+			if (length == 0)
+				return 0;
+
+			while (position == line.length())
+			{
+				long		bytes	= lineReader.getOffset();
+				String	next	= lineReader.readLine();
+				if (next == null)
+					return -1;
+
+				chars			+= line.length();
+				line			= next;
+				position	= 0;
+				lines.add(new Line(chars, bytes, next));
+			}
+
+			int count = Math.min(length, line.length() - position);
+			line.getChars(position, position + count, target, offset);
+			position += count;
+
+			return count;
+		}
+
+		/**
+		 * @param charPosition - the character position of a record, no earlier
+		 *                     than that of the last record asked about
+		 * @return long - the byte offset of the record
+		 */
+		long offsetOf(long charPosition)
+		{
+			while (lines.size() > 1 && charPosition >= lines.peekFirst().end())
+				lines.removeFirst();
+
+			Line first = lines.peekFirst();
+			if (first == null)
+				return lineReader.getOffset();
+
+			// a record starts a line unless the lines end with a lone '\r'
+			if (charPosition <= first.chars)
+				return first.bytes;
+
+			String before = first.text.substring(0, (int) Math.min(charPosition - first.chars, first.text.length()));
+
+			return first.bytes + before.getBytes(lineReader.getCharset()).length;
+		}
+
+		@Override
+		public void close()
+		{
+			// the input stream is closed by stopInStream
+		}
+	}
+
+	/**
+	 * A line given to a CSVParser, with the character and byte offsets it
+	 * starts at.
+	 */
+	private static class Line
+	{
+		private final long		chars;
+		private final long		bytes;
+		private final String	text;
+
+		Line(long chars, long bytes, String text)
+		{
+			this.chars	= chars;
+			this.bytes	= bytes;
+			this.text		= text;
+		}
+
+		long end()
+		{
+			return chars + text.length();
+		}
+	}
+
 }
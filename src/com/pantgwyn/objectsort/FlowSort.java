@@ -0,0 +1,354 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adapts a Sort to java.util.concurrent.Flow.
+ * <p>
+ * As a Flow.Subscriber a FlowSort requests input records in batches and adds
+ * each one to the sort as it arrives, spilling work files on the thread that
+ * delivers the input. No thread is left blocked waiting for input. As a
+ * Flow.Publisher it emits the sorted records once the input has completed,
+ * advancing the final merge only as far as the subscriber has requested.
+ * <p>
+ * A FlowSort sorts one input and accepts one subscriber.
+ * 
+ * <pre>
+ * FlowSort&lt;String&gt; flowSort = new FlowSort&lt;String&gt;(new TextSort(), comparator, tempDir);
+ * publisher.subscribe(flowSort);
+ * flowSort.subscribe(subscriber);
+ * </pre>
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+public class FlowSort<T> implements Flow.Processor<T, T>
+{
+
+	private static final int						BATCH_SIZE		= 1024;
+
+	private final Sort<T>								sort;
+	private final Comparator<T>					comparator;
+	private final List<String>					tempDirs;
+	private final Executor							executor;
+	private final AtomicLong						demand				= new AtomicLong();
+	private final AtomicInteger					wip						= new AtomicInteger();
+	private final Object								lock					= new Object();
+
+	private Flow.Subscription						upstream;
+	private long												outstanding;
+	private volatile boolean						inputComplete	= false;
+	private volatile boolean						cancelled			= false;
+	private volatile Throwable					error					= null;
+	private volatile Flow.Subscriber<? super T>	downstream;
+	private boolean											done					= false;
+	private MergeCursor<T>							cursor				= null;
+	private long												emitted				= 0;
+	private boolean											abandoned			= false;
+
+	/**
+	 * Constructor for FlowSort - output is delivered on the common ForkJoinPool.
+	 *
+	 * @param sort       - the Sort to run - e.g. a new TextSort
+	 * @param comparator - The Comparator for Class T
+	 * @param tempDir    - String of the fully qualified directory name for work
+	 *                   files (if required)
+	 */
+	public FlowSort(Sort<T> sort, Comparator<T> comparator, String tempDir)
+	{
+		this(sort, comparator, Collections.singletonList(tempDir), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor for FlowSort
+	 *
+	 * @param sort       - the Sort to run - e.g. a new TextSort
+	 * @param comparator - The Comparator for Class T
+	 * @param tempDirs   - List of the fully qualified directory names for work
+	 *                   files (if required)
+	 * @param executor   - the Executor that delivers the sorted records
+	 */
+	public FlowSort(Sort<T> sort, Comparator<T> comparator, List<String> tempDirs, Executor executor)
+	{
+		this.sort				= sort;
+		this.comparator	= comparator;
+		this.tempDirs		= tempDirs;
+		this.executor		= executor;
+	}
+
+	/**
+	 * Sort the records of a publisher.
+	 *
+	 * @param input      - the publisher of the records to sort
+	 * @param sort       - the Sort to run - e.g. a new TextSort
+	 * @param comparator - The Comparator for Class T
+	 * @param tempDir    - String of the fully qualified directory name for work
+	 *                   files (if required)
+	 * @param <T>        class of the objects being sorted.
+	 * @return Flow.Publisher - the publisher of the sorted records
+	 */
+	public static <T> Flow.Publisher<T> sort(Flow.Publisher<T> input, Sort<T> sort, Comparator<T> comparator, String tempDir)
+	{
+		FlowSort<T> flowSort = new FlowSort<T>(sort, comparator, tempDir);
+		input.subscribe(flowSort);
+		return flowSort;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription)
+	{
+		if (upstream != null)
+		{
+			subscription.cancel();
+			return;
+		}
+
+		upstream		= subscription;
+		sort.sortIn		= null;
+		sort.sortOut	= null;
+
+		if (!sort.startRuns(comparator, tempDirs))
+		{
+			upstream.cancel();
+			fail(new IOException("cannot access temp directories " + tempDirs));
+			return;
+		}
+
+		outstanding = BATCH_SIZE;
+		upstream.request(BATCH_SIZE);
+	}
+
+	@Override
+	public void onNext(T item)
+	{
+		synchronized (lock)
+		{
+			if (abandoned || error != null || cancelled)
+				return;
+
+			try
+			{
+				sort.addRecord(Objects.requireNonNull(item));
+			} catch (IOException | ClassNotFoundException | RuntimeException e)
+			{
+				upstream.cancel();
+				fail(e);
+				return;
+			}
+		}
+
+		if (--outstanding <= BATCH_SIZE / 2)
+		{
+			outstanding += BATCH_SIZE / 2;
+			upstream.request(BATCH_SIZE / 2);
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable)
+	{
+		fail(throwable);
+	}
+
+	@Override
+	public void onComplete()
+	{
+		synchronized (lock)
+		{
+			if (abandoned || error != null || cancelled)
+				return;
+
+			try
+			{
+				sort.endRuns();
+			} catch (IOException | ClassNotFoundException | RuntimeException e)
+			{
+				fail(e);
+				return;
+			}
+
+			inputComplete = true;
+		}
+
+		drain();
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber)
+	{
+		synchronized (this)
+		{
+			if (downstream != null)
+			{
+				subscriber.onSubscribe(new Flow.Subscription()
+				{
+					@Override
+					public void request(long n)
+					{
+					}
+
+					@Override
+					public void cancel()
+					{
+					}
+				});
+				subscriber.onError(new IllegalStateException("FlowSort accepts a single subscriber"));
+				return;
+			}
+
+			downstream = subscriber;
+		}
+
+		subscriber.onSubscribe(new Flow.Subscription()
+		{
+			@Override
+			public void request(long n)
+			{
+				if (n <= 0)
+				{
+					fail(new IllegalArgumentException("request must be positive: " + n));
+					return;
+				}
+
+				demand.getAndAccumulate(n, (current, added) -> {
+					long total = current + added;
+					return total < 0 ? Long.MAX_VALUE : total;
+				});
+				drain();
+			}
+
+			@Override
+			public void cancel()
+			{
+				cancelled = true;
+				if (upstream != null)
+					upstream.cancel();
+				drain();
+			}
+		});
+
+		drain();
+	}
+
+	private void fail(Throwable throwable)
+	{
+		if (error == null)
+			error = throwable;
+		drain();
+	}
+
+	private void drain()
+	{
+		if (wip.getAndIncrement() == 0)
+			executor.execute(this::emit);
+	}
+
+	private void emit()
+	{
+		int missed = 1;
+
+		do
+		{
+			Flow.Subscriber<? super T> subscriber = downstream;
+
+			if (!done)
+			{
+				if (cancelled)
+				{
+					finish();
+				} else if (error != null && subscriber != null)
+				{
+					finish();
+					subscriber.onError(error);
+				} else if (inputComplete && subscriber != null)
+				{
+					emitRequested(subscriber);
+				}
+			}
+
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	private void emitRequested(Flow.Subscriber<? super T> subscriber)
+	{
+		try
+		{
+			if (cursor == null)
+				cursor = sort.openCursor();
+
+			long requested = demand.get();
+			long sent = 0;
+
+			while (sent < requested && !cancelled)
+			{
+				T item = cursor.next();
+
+				if (item == null)
+				{
+					finish();
+					subscriber.onComplete();
+					return;
+				}
+
+				subscriber.onNext(item);
+				sent++;
+			}
+
+			emitted += sent;
+			if (requested != Long.MAX_VALUE)
+				demand.addAndGet(-sent);
+		} catch (IOException | ClassNotFoundException | RuntimeException e)
+		{
+			finish();
+			subscriber.onError(e);
+		}
+	}
+
+	private void finish()
+	{
+		done = true;
+
+		synchronized (lock)
+		{
+			// stop the input adding to the sort and remove its work files
+			abandoned = true;
+
+			if (cursor != null)
+				cursor.close();
+
+			if (sort.naturalRunFiles != null)
+			{
+				for (FileWrapper<T> runFile : sort.naturalRunFiles)
+				{
+					try
+					{
+						runFile.stopOutStream();
+					} catch (IOException e)
+					{
+						// the run is being discarded
+					}
+					runFile.deleteFile();
+				}
+				sort.naturalRunFiles = null;
+			}
+
+			for (FileWrapper<T> workFile : sort.takeRuns())
+				workFile.deleteFile();
+		}
+
+		sort.stats.addRecordsWritten(emitted);
+		sort.endSort();
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.pantgwyn.objectsort;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Splits the records of a MergeCursor into groups of equal key.
+ *
+ * @author Dave Breeze
+ *
+ * @param <K> class of the grouping key
+ * @param <T> class of the objects being sorted.
+ */
+class GroupCursor<K, T>
+{
+
+	private final MergeCursor<T>				cursor;
+	private final Function<T, K>				keyExtractor;
+	private final Comparator<? super K>	keyComparator;
+	private T														next;
+	private K														key;
+	private boolean											inGroups;
+	private long												recordsRead;
+
+	GroupCursor(MergeCursor<T> cursor, Function<T, K> keyExtractor, Comparator<? super K> keyComparator)
+			throws ClassNotFoundException
+	{
+		this.cursor					= cursor;
+		this.keyExtractor		= keyExtractor;
+		this.keyComparator	= keyComparator;
+
+		advance();
+	}
+
+	/**
+	 * Move to the next group, skipping any records of the current group that
+	 * were not read.
+	 *
+	 * @return true if there is another group
+	 * @throws ClassNotFoundException
+	 */
+	boolean nextGroup() throws ClassNotFoundException
+	{
+		while (inGroup())
+			advance();
+
+		if (next == null)
+			return false;
+
+		key				= keyExtractor.apply(next);
+		inGroups	= true;
+
+		return true;
+	}
+
+	/**
+	 * @return K - the key of the current group
+	 */
+	K getKey()
+	{
+		return key;
+	}
+
+	/**
+	 * @return long - the records read from the cursor
+	 */
+	long getRecordsRead()
+	{
+		return recordsRead;
+	}
+
+	/**
+	 * @return Iterator - the records of the current group
+	 */
+	Iterator<T> getRecords()
+	{
+		return new Iterator<T>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return inGroup();
+			}
+
+			@Override
+			public T next()
+			{
+				if (!inGroup())
+					throw new NoSuchElementException();
+
+				T record = GroupCursor.this.next;
+
+				try
+				{
+					advance();
+				} catch (ClassNotFoundException e)
+				{
+					throw new IllegalStateException("cannot read the next record", e);
+				}
+
+				return record;
+			}
+		};
+	}
+
+	private boolean inGroup()
+	{
+		return inGroups && next != null && keyComparator.compare(keyExtractor.apply(next), key) == 0;
+	}
+
+	private void advance() throws ClassNotFoundException
+	{
+		next = cursor.next();
+		if (next != null)
+			recordsRead++;
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.pantgwyn.objectsort;
+
+import java.util.Iterator;
+
+/**
+ * Interface for processing sorted data a key group at a time.
+ * <p>
+ * Used with Sort.sortGroups in place of a SortOutCallback.
+ * 
+ * @author Dave Breeze
+ *
+ * @param <K> class of the grouping key
+ * @param <T> class of the objects being sorted.
+ */
+public interface GroupedSortOutCallback<K, T>
+{
+	/**
+	 * Processes the next group of records in key order.
+	 * <p>
+	 * The records are read from the sort as the Iterator is advanced, and the
+	 * Iterator is only valid until consumeGroup returns.
+	 * 
+	 * @param key     - the key of the group
+	 * @param records - the records of the group, or null for end of data.
+	 */
+	public void consumeGroup(K key, Iterator<T> records);
+}
@@ -0,0 +1,70 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The gzip format, using java.util.zip.
+ * 
+ * @author Dave Breeze
+ *
+ */
+public class GzipCodec implements Codec
+{
+
+	private static final int	BUFFER_SIZE	= 64 * 1024;
+
+	private final int					level;
+
+	/**
+	 * Constructor for GzipCodec using the default compression level.
+	 */
+	public GzipCodec()
+	{
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Constructor for GzipCodec
+	 * 
+	 * @param level - the compression level, 1 (fastest) to 9 (smallest)
+	 */
+	public GzipCodec(int level)
+	{
+		this.level = level;
+	}
+
+	@Override
+	public String getExtension()
+	{
+		return ".gz";
+	}
+
+	@Override
+	public boolean matches(byte[] header, int length)
+	{
+		return length >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b;
+	}
+
+	@Override
+	public InputStream decompress(InputStream in) throws IOException
+	{
+		return new GZIPInputStream(in, BUFFER_SIZE);
+	}
+
+	@Override
+	public OutputStream compress(OutputStream out) throws IOException
+	{
+		return new GZIPOutputStream(out, BUFFER_SIZE)
+		{
+			{
+				def.setLevel(level);
+			}
+		};
+	}
+
+}
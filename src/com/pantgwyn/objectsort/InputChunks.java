@@ -0,0 +1,184 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a text, CSV or JSON Lines input file into byte ranges that start and
+ * end on record boundaries, so the ranges can be parsed on separate threads.
+ * <p>
+ * A text or JSON Lines record ends at a newline. A CSV record ends at a newline that is not
+ * inside a quoted field: the quotes in each part of the file are first counted
+ * in parallel, which gives whether each split point lies inside a quoted
+ * field, and the boundary search from that point then tracks the quotes.
+ *
+ * @author Dave Breeze
+ *
+ */
+class InputChunks
+{
+
+	private static final int	SCAN_BUFFER_SIZE	= 64 * 1024;
+	static final long					MIN_CHUNK_SIZE		= 4 * 1024 * 1024;
+
+	private InputChunks()
+	{
+	}
+
+	/**
+	 * Split a file into byte ranges on record boundaries.
+	 *
+	 * @param fileName - the fully qualified file name
+	 * @param type     - TEXT, CSV or JSONL
+	 * @param chunks   - the number of ranges wanted
+	 * @param executor - runs the CSV quote counting
+	 * @return List - long[] {start, end} for each range - fewer than chunks for
+	 *         small files
+	 * @throws IOException
+	 */
+	static List<long[]> split(String fileName, FileWrapper.Type type, int chunks, ExecutorService executor)
+			throws IOException
+	{
+		List<long[]> ranges = new ArrayList<long[]>();
+
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			chunks = (int) Math.max(1, Math.min(chunks, size / MIN_CHUNK_SIZE));
+
+			long[] targets = new long[chunks + 1];
+			for (int i = 0; i <= chunks; i++)
+				targets[i] = size * i / chunks;
+
+			boolean[] inQuotes = new boolean[chunks + 1];
+			if (type == FileWrapper.Type.CSV && chunks > 1)
+				inQuotes = quoteStates(fileName, targets, executor);
+
+			long start = 0;
+
+			for (int i = 1; i < chunks; i++)
+			{
+				long end = nextBoundary(channel, targets[i], inQuotes[i], type == FileWrapper.Type.CSV);
+
+				if (end > start && end < size)
+				{
+					ranges.add(new long[] { start, end });
+					start = end;
+				}
+			}
+
+			ranges.add(new long[] { start, size });
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Work out whether each target position lies inside a quoted CSV field by
+	 * counting the quotes between the targets in parallel.
+	 */
+	private static boolean[] quoteStates(String fileName, long[] targets, ExecutorService executor) throws IOException
+	{
+		List<Future<Long>> counts = new ArrayList<Future<Long>>();
+
+		for (int i = 0; i < targets.length - 1; i++)
+		{
+			long	from	= targets[i];
+			long	to		= targets[i + 1];
+
+			counts.add(executor.submit(() -> countQuotes(fileName, from, to)));
+		}
+
+		boolean[]	inQuotes	= new boolean[targets.length];
+		long			quotes		= 0;
+
+		try
+		{
+			for (int i = 0; i < counts.size(); i++)
+			{
+				quotes					+= counts.get(i).get();
+				inQuotes[i + 1]	= quotes % 2 == 1;
+			}
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted counting quotes", e);
+		} catch (ExecutionException e)
+		{
+			throw new IOException("error counting quotes", e.getCause());
+		}
+
+		return inQuotes;
+	}
+
+	private static long countQuotes(String fileName, long from, long to) throws IOException
+	{
+		long quotes = 0;
+
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+		{
+			ByteBuffer	buffer		= ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+			long				position	= from;
+
+			while (position < to)
+			{
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), to - position));
+
+				int read = channel.read(buffer, position);
+				if (read <= 0)
+					break;
+
+				for (int i = 0; i < read; i++)
+				{
+					if (buffer.get(i) == '"')
+						quotes++;
+				}
+
+				position += read;
+			}
+		}
+
+		return quotes;
+	}
+
+	/**
+	 * Find the start of the first record after a position.
+	 */
+	private static long nextBoundary(FileChannel channel, long position, boolean inQuotes, boolean csv)
+			throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+
+		while (true)
+		{
+			buffer.clear();
+
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				return channel.size();
+
+			for (int i = 0; i < read; i++)
+			{
+				byte b = buffer.get(i);
+
+				if (csv && b == '"')
+					inQuotes = !inQuotes;
+				else if (b == '\n' && !inQuotes)
+					return position + i + 1;
+			}
+
+			position += read;
+		}
+	}
+
+}
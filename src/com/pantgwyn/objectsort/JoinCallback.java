@@ -0,0 +1,24 @@
+package com.pantgwyn.objectsort;
+
+/**
+ * Interface for receiving the output of a SortMergeJoin.
+ * 
+ * @author Dave Breeze
+ *
+ * @param <L> class of the left records
+ * @param <R> class of the right records
+ */
+public interface JoinCallback<L, R>
+{
+	/**
+	 * Processes the next joined pair, in key order.
+	 * <p>
+	 * Every left record is paired with every right record of the same key. In
+	 * an outer join a record with no partner is passed with null for the other
+	 * side. Both are null at the end of the join.
+	 * 
+	 * @param left  - the left record, or null
+	 * @param right - the right record, or null
+	 */
+	public void consumeJoin(L left, R right);
+}
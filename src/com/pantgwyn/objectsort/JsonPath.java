@@ -0,0 +1,371 @@
+package com.pantgwyn.objectsort;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A key path into a JSON document, e.g. $.user.id, $.items[0].sku or
+ * $['odd name'].
+ * <p>
+ * A value is extracted by scanning the text of the document only as far as
+ * the value: fields and array elements before it are skipped without being
+ * parsed, and nothing after it is read. The value is returned as a String,
+ * Boolean or number, or as its JSON text for an object or array. A number is
+ * a Long if it is an integer that fits, a Double if it has a fraction or
+ * exponent, and otherwise a BigDecimal, so no digits are lost. A missing
+ * value, a JSON null and a document that is not valid up to the value
+ * all give null.
+ *
+ * @author Dave Breeze
+ *
+ */
+class JsonPath
+{
+
+	private final String				path;
+	private final List<Object>	segments	= new ArrayList<Object>();
+
+	/**
+	 * Constructor for JsonPath
+	 *
+	 * @param path - the key path, starting with $
+	 */
+	JsonPath(String path)
+	{
+		this.path = path;
+
+		if (!path.startsWith("$"))
+			throw new IllegalArgumentException("key path must start with $: " + path);
+
+		int i = 1;
+
+		while (i < path.length())
+		{
+			char c = path.charAt(i);
+
+			if (c == '.')
+			{
+				int end = i + 1;
+				while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[')
+					end++;
+
+				if (end == i + 1)
+					throw new IllegalArgumentException("empty field name in key path: " + path);
+
+				segments.add(path.substring(i + 1, end));
+				i = end;
+			} else if (c == '[' && i + 1 < path.length() && (path.charAt(i + 1) == '\'' || path.charAt(i + 1) == '"'))
+			{
+				int end = path.indexOf(path.charAt(i + 1) + "]", i + 2);
+				if (end < 0)
+					throw new IllegalArgumentException("unterminated field name in key path: " + path);
+
+				segments.add(path.substring(i + 2, end));
+				i = end + 2;
+			} else if (c == '[')
+			{
+				int end = path.indexOf(']', i);
+				if (end < 0)
+					throw new IllegalArgumentException("unterminated index in key path: " + path);
+
+				try
+				{
+					segments.add(Integer.valueOf(path.substring(i + 1, end).trim()));
+				} catch (NumberFormatException e)
+				{
+					throw new IllegalArgumentException("invalid index in key path: " + path);
+				}
+				i = end + 1;
+			} else
+				throw new IllegalArgumentException("invalid key path: " + path);
+		}
+	}
+
+	/**
+	 * Extract the value of the path from a JSON document.
+	 *
+	 * @param json - the document
+	 * @return Object - the value, null if it is missing or null
+	 */
+	Object extract(String json)
+	{
+		try
+		{
+			int pos = skipSpace(json, 0);
+
+			for (Object segment : segments)
+			{
+				pos = segment instanceof String ? findField(json, pos, (String) segment)
+						: findElement(json, pos, (Integer) segment);
+
+				if (pos < 0)
+					return null;
+			}
+
+			return value(json, pos);
+		} catch (IndexOutOfBoundsException | NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return int - the position of the value of the named field of the object
+	 *         at pos, -1 if there is none
+	 */
+	private static int findField(String json, int pos, String name)
+	{
+		if (json.charAt(pos) != '{')
+			return -1;
+
+		pos = skipSpace(json, pos + 1);
+
+		while (json.charAt(pos) == '"')
+		{
+			int			end		= skipString(json, pos);
+			boolean	match	= matchesName(json, pos, end, name);
+
+			pos = skipSpace(json, end);
+			if (json.charAt(pos) != ':')
+				return -1;
+
+			pos = skipSpace(json, pos + 1);
+			if (match)
+				return pos;
+
+			pos = skipSpace(json, skipValue(json, pos));
+			if (json.charAt(pos) != ',')
+				return -1;
+
+			pos = skipSpace(json, pos + 1);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return int - the position of the element at index of the array at pos,
+	 *         -1 if there is none
+	 */
+	private static int findElement(String json, int pos, int index)
+	{
+		if (json.charAt(pos) != '[')
+			return -1;
+
+		pos = skipSpace(json, pos + 1);
+		if (json.charAt(pos) == ']')
+			return -1;
+
+		for (int i = 0; i < index; i++)
+		{
+			pos = skipSpace(json, skipValue(json, pos));
+			if (json.charAt(pos) != ',')
+				return -1;
+
+			pos = skipSpace(json, pos + 1);
+		}
+
+		return pos;
+	}
+
+	private static Object value(String json, int pos)
+	{
+		char c = json.charAt(pos);
+
+		switch (c)
+		{
+			case '"':
+				return unescape(json, pos, skipString(json, pos));
+			case '{':
+			case '[':
+				return json.substring(pos, skipValue(json, pos));
+			case 't':
+				return Boolean.TRUE;
+			case 'f':
+				return Boolean.FALSE;
+			case 'n':
+				return null;
+			default:
+				String	number		= json.substring(pos, skipValue(json, pos));
+				boolean	integral	= number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0;
+
+				return number(number, integral);
+		}
+	}
+
+	private static Number number(String number, boolean integral)
+	{
+		if (integral)
+		{
+			try
+			{
+				return Long.valueOf(number);
+			} catch (NumberFormatException e)
+			{
+				// too many digits for a long
+				return new BigDecimal(number);
+			}
+		}
+
+		Double value = Double.valueOf(number);
+
+		return value.isInfinite() ? new BigDecimal(number) : value;
+	}
+
+	/**
+	 * @return int - the position after the value at pos
+	 */
+	private static int skipValue(String json, int pos)
+	{
+		char c = json.charAt(pos);
+
+		if (c == '"')
+			return skipString(json, pos);
+
+		if (c == '{' || c == '[')
+		{
+			int depth = 0;
+
+			do
+			{
+				c = json.charAt(pos);
+
+				if (c == '"')
+				{
+					pos = skipString(json, pos);
+					continue;
+				}
+
+				if (c == '{' || c == '[')
+					depth++;
+				else if (c == '}' || c == ']')
+					depth--;
+
+				pos++;
+			} while (depth > 0);
+
+			return pos;
+		}
+
+		while (pos < json.length())
+		{
+			c = json.charAt(pos);
+			if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c))
+				break;
+			pos++;
+		}
+
+		return pos;
+	}
+
+	/**
+	 * @return int - the position after the closing quote of the string at pos
+	 */
+	private static int skipString(String json, int pos)
+	{
+		pos++;
+
+		while (true)
+		{
+			char c = json.charAt(pos++);
+
+			if (c == '"')
+				return pos;
+			if (c == '\\')
+				pos++;
+		}
+	}
+
+	private static int skipSpace(String json, int pos)
+	{
+		while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+			pos++;
+
+		return pos;
+	}
+
+	private static boolean matchesName(String json, int start, int end, String name)
+	{
+		int length = end - start - 2;
+
+		if (!hasEscape(json, start, end))
+			return length == name.length() && json.regionMatches(start + 1, name, 0, length);
+
+		return unescape(json, start, end).equals(name);
+	}
+
+	/**
+	 * @return boolean - true if the string from start to end holds an escape
+	 */
+	private static boolean hasEscape(String json, int start, int end)
+	{
+		for (int i = start + 1; i < end - 1; i++)
+		{
+			if (json.charAt(i) == '\\')
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return String - the text of the string from start to end, its quotes
+	 *         removed and escapes replaced
+	 */
+	private static String unescape(String json, int start, int end)
+	{
+		if (!hasEscape(json, start, end))
+			return json.substring(start + 1, end - 1);
+
+		StringBuilder sb = new StringBuilder(end - start);
+
+		for (int i = start + 1; i < end - 1; i++)
+		{
+			char c = json.charAt(i);
+
+			if (c != '\\')
+			{
+				sb.append(c);
+				continue;
+			}
+
+			c = json.charAt(++i);
+
+			switch (c)
+			{
+				case 'b':
+					sb.append('\b');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'u':
+					sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+					i += 4;
+					break;
+				default:
+					sb.append(c);
+					break;
+			}
+		}
+
+		return sb.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return path;
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.pantgwyn.objectsort;
+
+import java.math.BigDecimal;
+
+/**
+ * A line of a JSON Lines file with the values of its sort keys, as sorted by
+ * JsonSort.
+ * <p>
+ * The keys are extracted once, when the record is read, so comparisons never
+ * parse the JSON. The line is kept with the line ending it was read with and
+ * written out unchanged.
+ *
+ * @author Dave Breeze
+ *
+ */
+public final class JsonRecord
+{
+
+	private final String		text;
+	private final Object[]	keys;
+
+	JsonRecord(String text, Object[] keys)
+	{
+		this.text	= text;
+		this.keys	= keys;
+	}
+
+	/**
+	 * @return String - the line as read, without its line ending
+	 */
+	public String getLine()
+	{
+		int end = text.length();
+
+		if (end > 0 && text.charAt(end - 1) == '\n')
+			end--;
+		if (end > 0 && text.charAt(end - 1) == '\r')
+			end--;
+
+		return end == text.length() ? text : text.substring(0, end);
+	}
+
+	/**
+	 * @return String - the line as read, with its line ending if it had one
+	 */
+	String getText()
+	{
+		return text;
+	}
+
+	/**
+	 * @param index - the position of the key path given to JsonSort
+	 * @return Object - the String, Long, Double, BigDecimal or Boolean value of
+	 *         the key, the JSON text of an object or array, or null if it is missing or null
+	 */
+	public Object getKey(int index)
+	{
+		return keys[index];
+	}
+
+	/**
+	 * @return int - the number of keys
+	 */
+	public int getKeyCount()
+	{
+		return keys.length;
+	}
+
+	/**
+	 * Compare a key of two records. Missing and null values sort first, then
+	 * booleans, then numbers by value, then strings.
+	 *
+	 * @param other - the record to compare with
+	 * @param index - the position of the key
+	 * @return int - negative, zero or positive as this record sorts before, with
+	 *         or after other
+	 */
+	public int compareKey(JsonRecord other, int index)
+	{
+		Object	a	= keys[index];
+		Object	b	= other.keys[index];
+
+		int result = Integer.compare(rank(a), rank(b));
+		if (result != 0 || a == null)
+			return result;
+
+		if (a instanceof Long && b instanceof Long)
+			return Long.compare((Long) a, (Long) b);
+		if (a instanceof Double && b instanceof Double)
+			return Double.compare((Double) a, (Double) b);
+		if (a instanceof Number)
+			return decimal((Number) a).compareTo(decimal((Number) b));
+		if (a instanceof Boolean)
+			return Boolean.compare((Boolean) a, (Boolean) b);
+
+		return ((String) a).compareTo((String) b);
+	}
+
+	/**
+	 * @return BigDecimal - the exact value of a Long, Double or BigDecimal key
+	 */
+	private static BigDecimal decimal(Number number)
+	{
+		if (number instanceof BigDecimal)
+			return (BigDecimal) number;
+		if (number instanceof Long)
+			return BigDecimal.valueOf(number.longValue());
+
+		return new BigDecimal(number.doubleValue());
+	}
+
+	private static int rank(Object key)
+	{
+		if (key == null)
+			return 0;
+		if (key instanceof Boolean)
+			return 1;
+		if (key instanceof Number)
+			return 2;
+
+		return 3;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getLine();
+	}
+
+}
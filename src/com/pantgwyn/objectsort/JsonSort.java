@@ -0,0 +1,170 @@
+package com.pantgwyn.objectsort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import com.pantgwyn.objectsort.FileWrapper.Type;
+
+/**
+ * Class for performing a sort of JSON Lines files.
+ * <p>
+ * The sort is configured with one or more key paths, e.g. $.user.id and $.ts.
+ * The value of each path is extracted once as each line is read, scanning the
+ * line only as far as the value, and kept with the line in a JsonRecord.
+ * Comparisons use the extracted values and the lines are written out
+ * unchanged.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class JsonSort extends Sort<JsonRecord>
+{
+
+	private final List<JsonPath> keyPaths = new ArrayList<JsonPath>();
+
+	/**
+	 * Constructor for class JsonSort
+	 * <p>
+	 * This will by default use 50% of the available memory and non verbose
+	 * messages.
+	 *
+	 * @param keyPaths - the key paths, most significant first
+	 */
+	public JsonSort(String... keyPaths)
+	{
+		super();
+
+		setKeyPaths(Arrays.asList(keyPaths));
+	}
+
+	/**
+	 * Constructor for class JsonSort
+	 *
+	 * @param keyPaths     - the key paths, most significant first
+	 * @param memoryFactor - the fraction of available memory to use, less than 1
+	 * @param verbose      - a boolean that controls verbose messaging
+	 */
+	public JsonSort(List<String> keyPaths, double memoryFactor, boolean verbose)
+	{
+		super(memoryFactor, verbose);
+
+		setKeyPaths(keyPaths);
+	}
+
+	/**
+	 * Constructor for class JsonSort
+	 *
+	 * @param keyPaths     - the key paths, most significant first
+	 * @param memoryFactor - the fraction of available memory to use, less than 1
+	 */
+	public JsonSort(List<String> keyPaths, double memoryFactor)
+	{
+		super(memoryFactor);
+
+		setKeyPaths(keyPaths);
+	}
+
+	private void setKeyPaths(List<String> paths)
+	{
+		if (paths.isEmpty())
+			throw new IllegalArgumentException("at least one key path is required");
+
+		for (String path : paths)
+			keyPaths.add(new JsonPath(path));
+	}
+
+	/**
+	 * Create the record for a line, extracting its keys. Used to build the
+	 * records passed by a SortInCallback. A line without a line ending is
+	 * written out with '\n'.
+	 *
+	 * @param line - a JSON document on one line, with or without its line ending
+	 * @return JsonRecord - the line and its keys
+	 */
+	public JsonRecord record(String line)
+	{
+		Object[] keys = new Object[keyPaths.size()];
+
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = keyPaths.get(i).extract(line);
+
+		return new JsonRecord(line, keys);
+	}
+
+	/**
+	 * @return Comparator - compares records on all keys in ascending order
+	 */
+	public Comparator<JsonRecord> comparator()
+	{
+		boolean[] ascending = new boolean[keyPaths.size()];
+		Arrays.fill(ascending, true);
+
+		return comparator(ascending);
+	}
+
+	/**
+	 * @param ascending - for each key, false to sort it in descending order
+	 * @return Comparator - compares records on all keys
+	 */
+	public Comparator<JsonRecord> comparator(boolean... ascending)
+	{
+		if (ascending.length != keyPaths.size())
+			throw new IllegalArgumentException("expected " + keyPaths.size() + " key orders, got " + ascending.length);
+
+		boolean[] orders = ascending.clone();
+
+		return (a, b) -> {
+			for (int i = 0; i < orders.length; i++)
+			{
+				int result = a.compareKey(b, i);
+				if (result != 0)
+					return orders[i] ? result : -result;
+			}
+			return 0;
+		};
+	}
+
+	@Override
+	protected Type getSortType()
+	{
+		return FileWrapper.Type.JSONL;
+	}
+
+	@Override
+	protected FileWrapper<JsonRecord> newFileWrapper(String fileName)
+	{
+		FileWrapper<JsonRecord> file = super.newFileWrapper(fileName);
+		file.setLineParser(this::record);
+
+		return file;
+	}
+
+	@Override
+	protected FileWrapper<JsonRecord> newFileWrapper(String fileName, long rangeStart, long rangeEnd)
+	{
+		FileWrapper<JsonRecord> file = super.newFileWrapper(fileName, rangeStart, rangeEnd);
+		file.setLineParser(this::record);
+
+		return file;
+	}
+
+	@Override
+	protected long estimateSize(JsonRecord record)
+	{
+		long size = 80 + 2L * record.getText().length() + 8L * record.getKeyCount();
+
+		for (int i = 0; i < record.getKeyCount(); i++)
+		{
+			Object key = record.getKey(i);
+
+			if (key instanceof String)
+				size += 40 + 2L * ((String) key).length();
+			else if (key != null)
+				size += 24;
+		}
+
+		return size;
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.pantgwyn.objectsort;
+
+/**
+ * A global memory budget shared between concurrently running sorts.
+ * <p>
+ * Each sort holds a Quota of the budget. Quotas are rebalanced whenever a sort
+ * starts a new in-memory run: a sort holding more than its fair share gives
+ * the excess back and a sort holding less takes up to its fair share from
+ * whatever is free. A sort that cannot obtain its minimum quota waits until
+ * another sort releases memory.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class MemoryGovernor
+{
+
+	private static final long	MIN_QUOTA	= 1024 * 1024;
+
+	private final long				totalBytes;
+	private final long				minimumQuota;
+	private long							freeBytes;
+	private int								participants;
+
+	/**
+	 * Constructor for MemoryGovernor
+	 *
+	 * @param totalBytes - the memory budget, in bytes, shared by all sorts
+	 */
+	public MemoryGovernor(long totalBytes)
+	{
+		this(totalBytes, Math.max(MIN_QUOTA, totalBytes / 64));
+	}
+
+	/**
+	 * Constructor for MemoryGovernor
+	 *
+	 * @param totalBytes   - the memory budget, in bytes, shared by all sorts
+	 * @param minimumQuota - the smallest quota, in bytes, a sort will run with
+	 */
+	public MemoryGovernor(long totalBytes, long minimumQuota)
+	{
+		if (totalBytes <= 0)
+			throw new IllegalArgumentException("memory budget must be positive");
+
+		this.totalBytes		= totalBytes;
+		this.minimumQuota	= Math.min(minimumQuota, totalBytes);
+		freeBytes					= totalBytes;
+	}
+
+	/**
+	 * @return long - the total memory budget in bytes
+	 */
+	public long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	/**
+	 * @return long - the memory, in bytes, not currently held by any sort
+	 */
+	public synchronized long getFreeBytes()
+	{
+		return freeBytes;
+	}
+
+	/**
+	 * @return int - the number of sorts currently holding a quota
+	 */
+	public synchronized int getParticipants()
+	{
+		return participants;
+	}
+
+	/**
+	 * Obtain a quota of the budget, waiting until at least the minimum quota is
+	 * free.
+	 *
+	 * @return Quota - the memory handed out to the caller
+	 * @throws InterruptedException
+	 */
+	public synchronized Quota acquire() throws InterruptedException
+	{
+		participants++;
+
+		try
+		{
+			while (freeBytes < minimumQuota)
+				wait();
+		} catch (InterruptedException e)
+		{
+			participants--;
+			throw e;
+		}
+
+		Quota quota = new Quota();
+		quota.bytes = Math.min(freeBytes, Math.max(minimumQuota, fairShare()));
+		freeBytes -= quota.bytes;
+
+		return quota;
+	}
+
+	private long fairShare()
+	{
+		return totalBytes / Math.max(1, participants);
+	}
+
+	private synchronized long rebalance(Quota quota)
+	{
+		if (quota.released)
+			return 0;
+
+		long target = Math.max(minimumQuota, fairShare());
+
+		if (quota.bytes > target)
+		{
+			freeBytes		+= quota.bytes - target;
+			quota.bytes	= target;
+			notifyAll();
+		} else if (quota.bytes < target && freeBytes > 0)
+		{
+			long extra = Math.min(freeBytes, target - quota.bytes);
+			freeBytes		-= extra;
+			quota.bytes	+= extra;
+		}
+
+		return quota.bytes;
+	}
+
+	private synchronized void release(Quota quota)
+	{
+		if (quota.released)
+			return;
+
+		quota.released	= true;
+		freeBytes				+= quota.bytes;
+		quota.bytes			= 0;
+		participants--;
+		notifyAll();
+	}
+
+	/**
+	 * A share of the MemoryGovernor budget held by one sort.
+	 */
+	public class Quota implements AutoCloseable
+	{
+		private long		bytes;
+		private boolean	released;
+
+		private Quota()
+		{
+		}
+
+		/**
+		 * @return long - the bytes currently held by this quota
+		 */
+		public long getBytes()
+		{
+			synchronized (MemoryGovernor.this)
+			{
+				return bytes;
+			}
+		}
+
+		/**
+		 * Give back memory above the current fair share, or take more up to it.
+		 *
+		 * @return long - the bytes held after rebalancing
+		 */
+		public long refresh()
+		{
+			return rebalance(this);
+		}
+
+		/**
+		 * Return all of the quota to the governor.
+		 */
+		@Override
+		public void close()
+		{
+			release(this);
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.BinaryOperator;
+import java.util.logging.Level;
+
+/**
+ * A k-way merge of sorted FileWrappers that is advanced one record at a time.
+ * <p>
+ * The file holding the lowest current record is only read again when the
+ * next record is requested, so the record returned by next remains the
+ * current item of its file until then. With a reducer, records the comparator
+ * finds equal are combined across the files, and the file is read on to find
+ * the end of each set of equal records.
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+class MergeCursor<T>
+{
+
+	private final List<FileWrapper<T>>		mergeFileList;
+	private final Queue<FileWrapper<T>>	fileQueue;
+	private final Comparator<T>						itemComparator;
+	private final BinaryOperator<T>				reducer;
+	private FileWrapper<T>								lowestFile	= null;
+	private boolean												closed			= false;
+
+	/**
+	 * Constructor for MergeCursor - starts the input streams of the files.
+	 *
+	 * @param mergeFileList  - the sorted files to merge
+	 * @param itemComparator - the Comparator for Class T
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	MergeCursor(List<FileWrapper<T>> mergeFileList, Comparator<T> itemComparator) throws IOException,
+																																												ClassNotFoundException
+	{
+		this(mergeFileList, itemComparator, null);
+	}
+
+	/**
+	 * Constructor for MergeCursor - starts the input streams of the files.
+	 *
+	 * @param mergeFileList  - the sorted files to merge
+	 * @param itemComparator - the Comparator for Class T
+	 * @param reducer        - combines equal records, or null to keep every
+	 *                       record
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	MergeCursor(List<FileWrapper<T>> mergeFileList, Comparator<T> itemComparator, BinaryOperator<T> reducer)
+			throws IOException,
+			ClassNotFoundException
+	{
+		Comparator<FileWrapper<T>> workFileCompare = new Comparator<FileWrapper<T>>()
+		{
+			@Override
+			public int compare(	FileWrapper<T> arg0,
+													FileWrapper<T> arg1)
+			{
+				return itemComparator.compare(arg0.getCurrentInputItem(), arg1.getCurrentInputItem());
+			}
+		};
+
+		this.mergeFileList	= mergeFileList;
+		this.itemComparator	= itemComparator;
+		this.reducer				= reducer;
+		fileQueue						= new PriorityQueue<FileWrapper<T>>(Math.max(1, mergeFileList.size()), workFileCompare);
+
+		for (FileWrapper<T> inFile : mergeFileList)
+		{
+			inFile.startInStream();
+			if (inFile.getCurrentInputItem() != null)
+				fileQueue.add(inFile);
+		}
+	}
+
+	/**
+	 * Get the next record in merged order.
+	 *
+	 * @return T - the next record or null when all files are exhausted
+	 * @throws ClassNotFoundException
+	 */
+	T next() throws ClassNotFoundException
+	{
+		T item = advance();
+
+		if (reducer == null || item == null)
+			return item;
+
+		while (true)
+		{
+			release();
+
+			if (fileQueue.isEmpty() || itemComparator.compare(item, fileQueue.peek().getCurrentInputItem()) != 0)
+				return item;
+
+			item = reducer.apply(item, advance());
+		}
+	}
+
+	private T advance() throws ClassNotFoundException
+	{
+		release();
+
+		if (fileQueue.isEmpty())
+			return null;
+
+		lowestFile = fileQueue.remove();
+
+		return lowestFile.getCurrentInputItem();
+	}
+
+	/**
+	 * Read on from the file that held the last record returned.
+	 */
+	private void release() throws ClassNotFoundException
+	{
+		if (lowestFile == null)
+			return;
+
+		lowestFile.getNextInput();
+		if (lowestFile.getCurrentInputItem() != null)
+			fileQueue.add(lowestFile);
+		lowestFile = null;
+	}
+
+	/**
+	 * @return List - the files being merged
+	 */
+	List<FileWrapper<T>> getMergeFiles()
+	{
+		return mergeFileList;
+	}
+
+	/**
+	 * Stop the input streams and delete the merged files. An error stopping a
+	 * stream is logged and the other files are still closed and deleted.
+	 */
+	void close()
+	{
+		if (closed)
+			return;
+
+		closed = true;
+
+		mergeFileList.parallelStream().forEachOrdered(t -> {
+
+			try
+			{
+				t.stopInStream();
+			} catch (IOException e)
+			{
+				// the merge is over, so carry on and remove the remaining work files
+				Sort.LOG.log(Level.WARNING, "IO error stopping streams on merge of " + t.getFileName(), e);
+			}
+			t.deleteFile();
+
+		});
+	}
+
+}
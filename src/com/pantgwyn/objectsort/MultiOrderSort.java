@@ -0,0 +1,275 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts one input into several outputs, each in its own order, reading and
+ * decoding the input once.
+ * <p>
+ * Each order has its own Sort, comparator and sortout file. The input is read
+ * by the Sort of the first order, whose filter and projection apply, and each
+ * batch of records is passed to every order. The orders share the records, so
+ * a record is decoded and held once however many orders buffer it. Each order
+ * builds, spills and merges its runs on its own thread, so the orders' I/O
+ * overlaps, and the memory budget is divided equally between them.
+ * <p>
+ * As the records are shared a reducer of any order must not change the
+ * records it is given.
+ *
+ * <pre>
+ * MultiOrderSort&lt;String&gt; multi = new MultiOrderSort&lt;String&gt;();
+ * multi.addOrder(new TextSort(), byName, "byName.txt");
+ * multi.addOrder(new TextSort(), byDate, "byDate.txt");
+ * multi.sort("in.txt", tempDir);
+ * </pre>
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+public class MultiOrderSort<T>
+{
+
+	private static final int					BATCH_SIZE			= 1024;
+	private static final int					QUEUED_BATCHES	= 4;
+
+	private final List<Order>					orders					= new ArrayList<Order>();
+	private final List<T>							aborted					= new ArrayList<T>();
+	private long											memoryBudget;
+
+	/**
+	 * One output order.
+	 */
+	private class Order
+	{
+		private final Sort<T>								sort;
+		private final Comparator<T>					comparator;
+		private final String								sortOutName;
+		private final BlockingQueue<List<T>>	batches	= new ArrayBlockingQueue<List<T>>(QUEUED_BATCHES);
+
+		private Order(Sort<T> sort, Comparator<T> comparator, String sortOutName)
+		{
+			this.sort					= sort;
+			this.comparator		= comparator;
+			this.sortOutName	= sortOutName;
+		}
+
+		/**
+		 * Add each batch to the sort until the empty batch that ends the input,
+		 * then write the output. After a failure the batches are still taken, so
+		 * the reader is never left blocked.
+		 */
+		private boolean run() throws Exception
+		{
+			Exception failure = null;
+
+			for (List<T> batch = batches.take(); !batch.isEmpty() || batch == aborted; batch = batches.take())
+			{
+				if (batch == aborted)
+				{
+					// the input failed, so the output would be incomplete
+					for (FileWrapper<T> workFile : sort.workFileList)
+						workFile.deleteFile();
+					return false;
+				}
+
+				if (failure != null)
+					continue;
+
+				try
+				{
+					for (T record : batch)
+						sort.addRecord(record);
+				} catch (Exception e)
+				{
+					failure = e;
+				}
+			}
+
+			if (failure != null)
+				throw failure;
+
+			sort.endRuns();
+
+			return sort.outputRuns();
+		}
+	}
+
+	/**
+	 * Add an output order. If the Sort has the same work file prefix as an
+	 * order already added, the prefix is changed so that the orders can share
+	 * temporary directories.
+	 *
+	 * @param sort        - the Sort for this order - e.g. a new TextSort
+	 * @param comparator  - the Comparator for Class T giving this order
+	 * @param sortOutName - String of the fully qualified sortout file name
+	 */
+	public void addOrder(Sort<T> sort, Comparator<T> comparator, String sortOutName)
+	{
+		for (Order order : orders)
+		{
+			if (order.sort.getWorkFilePrefix().equals(sort.getWorkFilePrefix()))
+				sort.setWorkFilePrefix(sort.getWorkFilePrefix() + "Order" + orders.size());
+		}
+
+		orders.add(new Order(sort, comparator, sortOutName));
+	}
+
+	/**
+	 * Set the memory budget shared by the orders. By default it is the budget
+	 * of the first Sort or, if it has none, the memory its memory factor
+	 * allows.
+	 *
+	 * @param memoryBudget - budget in bytes, or 0 for the default
+	 */
+	public void setMemoryBudget(long memoryBudget)
+	{
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Sort a file into every order.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param tempDir    - String of the fully qualified directory name for work
+	 *                   files (if required)
+	 * @return true - every order completed - false - an order failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(String sortInName, String tempDir) throws ClassNotFoundException,
+																												IOException
+	{
+		return sort(sortInName, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Sort a file into every order, striping any work files across several
+	 * temporary directories.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param tempDirs   - List of the fully qualified directory names for work
+	 *                   files (if required)
+	 * @return true - every order completed - false - an order failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(String sortInName, List<String> tempDirs) throws ClassNotFoundException,
+																																IOException
+	{
+		if (orders.isEmpty())
+			throw new IllegalStateException("no orders added");
+
+		Sort<T>	first		= orders.get(0).sort;
+		long		budget	= memoryBudget;
+
+		if (budget <= 0)
+			budget = first.getMemoryBudget();
+		if (budget <= 0)
+			budget = (long) (first.getAvailableMemory() * Math.min(first.memoryFactor, 1));
+
+		for (Order order : orders)
+		{
+			order.sort.sortIn		= null;
+			order.sort.sortOut	= order.sort.newFileWrapper(order.sortOutName);
+			order.sort.setMemoryBudget(Math.max(1, budget / orders.size()));
+
+			if (!order.sort.startRuns(order.comparator, tempDirs))
+				return false;
+		}
+
+		ExecutorService			pool		= Executors.newFixedThreadPool(orders.size());
+		List<Future<Boolean>>	results	= new ArrayList<Future<Boolean>>();
+
+		try
+		{
+			for (Order order : orders)
+				results.add(pool.submit(order::run));
+
+			readInput(first, sortInName);
+
+			boolean sorted = true;
+
+			for (Future<Boolean> result : results)
+				sorted &= Sort.await(result, sortInName);
+
+			return sorted;
+		} finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Read the input once, passing each batch of records to every order, then
+	 * end every order's input with an empty batch.
+	 */
+	private void readInput(Sort<T> first, String sortInName) throws ClassNotFoundException,
+																															IOException
+	{
+		FileWrapper<T>	in				= first.newSortIn(sortInName);
+		List<T>					batch			= new ArrayList<T>(BATCH_SIZE);
+		boolean					complete	= false;
+
+		try
+		{
+			in.startInStream();
+
+			for (T item = in.getCurrentInputItem(); item != null; item = in.getCurrentInputItem())
+			{
+				T record = first.ingest(item);
+				in.getNextInput();
+
+				if (record == null)
+				{
+					first.stats.addRecordsFiltered(1);
+					continue;
+				}
+
+				batch.add(record);
+
+				if (batch.size() == BATCH_SIZE)
+				{
+					put(batch);
+					batch = new ArrayList<T>(BATCH_SIZE);
+				}
+			}
+
+			in.stopInStream();
+
+			if (!batch.isEmpty())
+				put(batch);
+
+			for (Order order : orders)
+				order.sort.stats.setInputBytes(in.getBytesRead());
+
+			complete = true;
+		} finally
+		{
+			put(complete ? Collections.<T> emptyList() : aborted);
+		}
+	}
+
+	private void put(List<T> batch) throws IOException
+	{
+		try
+		{
+			for (Order order : orders)
+				order.batches.put(batch);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted passing records to the orders", e);
+		}
+	}
+
+}
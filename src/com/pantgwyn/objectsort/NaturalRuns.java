@@ -0,0 +1,122 @@
+package com.pantgwyn.objectsort;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Detects naturally ordered runs in the sort input.
+ * <p>
+ * Records are dealt into lanes as they are buffered: each record joins the
+ * lane with the highest last record that is not greater than it. Input that
+ * is already sorted fills a single lane, and input made up of a few
+ * interleaved sorted streams fills one lane per stream. While the number of
+ * lanes stays within the limit every lane is a sorted run that can be written
+ * without an in-memory sort.
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+class NaturalRuns<T>
+{
+
+	private final Comparator<T>	comparator;
+	private final int						maxLanes;
+	private final List<List<T>>	lanes	= new ArrayList<List<T>>();
+	private final List<T>				tails	= new ArrayList<T>();
+	private boolean							structured;
+
+	NaturalRuns(Comparator<T> comparator, int maxLanes)
+	{
+		this.comparator	= comparator;
+		this.maxLanes		= maxLanes;
+		structured			= true;
+	}
+
+	/**
+	 * Start detection for a new buffer.
+	 */
+	void reset()
+	{
+		lanes.clear();
+		tails.clear();
+		structured = true;
+	}
+
+	/**
+	 * Add a buffered record to its lane.
+	 *
+	 * @param record - the record just buffered
+	 */
+	void add(T record)
+	{
+		if (!structured)
+			return;
+
+		int lane = laneFor(record);
+
+		if (lane < 0)
+		{
+			if (lanes.size() >= maxLanes)
+			{
+				// too many lanes - the buffer will be sorted as usual
+				structured = false;
+				lanes.clear();
+				tails.clear();
+				return;
+			}
+
+			lanes.add(new ArrayList<T>());
+			tails.add(record);
+			lane = lanes.size() - 1;
+		}
+
+		lanes.get(lane).add(record);
+	}
+
+	/**
+	 * @return true - every buffered record belongs to one of the lanes
+	 */
+	boolean isStructured()
+	{
+		return structured && !lanes.isEmpty();
+	}
+
+	/**
+	 * @return List - the sorted lanes of the buffer
+	 */
+	List<List<T>> getLanes()
+	{
+		return lanes;
+	}
+
+	/**
+	 * Find the lane a record extends and make the record its new tail.
+	 *
+	 * @param record - the next record
+	 * @return int - the lane index, or -1 if the record is lower than every tail
+	 */
+	int laneFor(T record)
+	{
+		int	best		= -1;
+		T		bestTail	= null;
+
+		for (int i = 0; i < tails.size(); i++)
+		{
+			T tail = tails.get(i);
+
+			if (comparator.compare(tail, record) <= 0 && (best < 0 || comparator.compare(tail, bestTail) > 0))
+			{
+				best			= i;
+				bestTail	= tail;
+			}
+		}
+
+		if (best >= 0)
+			tails.set(best, record);
+
+		return best;
+	}
+
+}
@@ -0,0 +1,164 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An InputStream that reads its source on a background thread, a few blocks
+ * ahead of the caller. Used so that decompressing an input file overlaps with
+ * parsing the records in it.
+ * 
+ * @author Dave Breeze
+ *
+ */
+class ReadAheadInputStream extends InputStream
+{
+
+	private static final int						BLOCK_SIZE	= 64 * 1024;
+	private static final int						BLOCKS			= 4;
+
+	private final InputStream						in;
+	private final BlockingQueue<Block>	filled			= new ArrayBlockingQueue<Block>(BLOCKS + 1);
+	private final BlockingQueue<Block>	empty				= new ArrayBlockingQueue<Block>(BLOCKS);
+	private final Thread								reader;
+	private volatile IOException				error;
+	private Block												current;
+	private int													position;
+	private boolean											ended;
+
+	/**
+	 * A block of data read ahead. A length of -1 marks the end of the source.
+	 */
+	private static class Block
+	{
+		private final byte[]	data	= new byte[BLOCK_SIZE];
+		private int						length;
+	}
+
+	ReadAheadInputStream(InputStream in)
+	{
+		this.in = in;
+
+		for (int i = 0; i < BLOCKS; i++)
+			empty.add(new Block());
+
+		reader = new Thread(this::readAhead, "ObjectSort-read-ahead");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void readAhead()
+	{
+		try
+		{
+			while (true)
+			{
+				Block block = empty.take();
+				block.length = 0;
+
+				int read = 0;
+				while (block.length < BLOCK_SIZE && (read = in.read(block.data, block.length, BLOCK_SIZE - block.length)) > 0)
+					block.length += read;
+
+				if (block.length > 0)
+					filled.put(block);
+
+				if (read < 0 || block.length == 0)
+					break;
+			}
+		} catch (IOException e)
+		{
+			error = e;
+		} catch (InterruptedException e)
+		{
+			// closed
+			return;
+		}
+
+		Block end = new Block();
+		end.length = -1;
+		filled.add(end);
+	}
+
+	private boolean nextBlock() throws IOException
+	{
+		if (ended)
+			return false;
+
+		if (current != null)
+			empty.add(current);
+
+		try
+		{
+			current = filled.take();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted reading ahead", e);
+		}
+
+		position = 0;
+
+		if (current.length < 0)
+		{
+			current	= null;
+			ended		= true;
+
+			if (error != null)
+				throw error;
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if ((current == null || position >= current.length) && !nextBlock())
+			return -1;
+
+		return current.data[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+			return 0;
+
+		if ((current == null || position >= current.length) && !nextBlock())
+			return -1;
+
+		int count = Math.min(len, current.length - position);
+		System.arraycopy(current.data, position, b, off, count);
+		position += count;
+
+		return count;
+	}
+
+	@Override
+	public int available()
+	{
+		return current == null ? 0 : current.length - position;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		reader.interrupt();
+
+		try
+		{
+			reader.join();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		in.close();
+	}
+
+}
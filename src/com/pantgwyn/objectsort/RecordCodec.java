@@ -0,0 +1,44 @@
+package com.pantgwyn.objectsort;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Interface to write records to work files and read them back, in place of
+ * the file format of the sort type.
+ * <p>
+ * A codec writes just the fields of a record, with none of the class
+ * descriptors and handles of java serialization, and reads a record into an
+ * existing instance. With Sort.setRecordReuse a merge reads each work file
+ * into the same instance over and over, so a merge of mutable records
+ * allocates almost nothing per record.
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+public interface RecordCodec<T>
+{
+	/**
+	 * @param record - the record to write
+	 * @param out    - the work file
+	 * @throws IOException
+	 */
+	public void write(T record, DataOutput out) throws IOException;
+
+	/**
+	 * @return T - a new, empty record for readInto
+	 */
+	public T newRecord();
+
+	/**
+	 * Read the next record into an existing instance, replacing all of its
+	 * fields.
+	 *
+	 * @param target - the record to fill
+	 * @param in     - the work file
+	 * @throws IOException - java.io.EOFException at the end of the file
+	 */
+	public void readInto(T target, DataInput in) throws IOException;
+}
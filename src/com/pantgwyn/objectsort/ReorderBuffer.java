@@ -0,0 +1,399 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Puts an unbounded stream of timestamped records back in order, for inputs
+ * that never end.
+ * <p>
+ * Records are held in a heap until they can no longer be overtaken. The
+ * watermark trails the latest event time seen by the allowed lateness, and
+ * may be moved on with advanceWatermark when the input is idle. Once the
+ * event time of the first held record is at or below the watermark, or more
+ * records are held than the reorder window, the first record is passed to the
+ * output. Latency is therefore bounded by the lateness and the window.
+ * <p>
+ * When the held records outgrow the memory limit the heap is sorted and
+ * spilled to a work file of the Sort, and the output merges the heap with the
+ * spilled runs, so a burst of late data uses disk rather than heap. A record
+ * that arrives after a later record has already been passed on is late: it is
+ * given to the late callback, or passed on at once if there is none.
+ * <p>
+ * The comparator must order records by event time first.
+ *
+ * <pre>
+ * ReorderBuffer&lt;Event&gt; buffer = new ReorderBuffer&lt;Event&gt;(sort, comparator, Event::getTime, 5000, output, tempDir);
+ * for (Event event : stream)
+ * 	buffer.add(event);
+ * </pre>
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being reordered.
+ */
+public class ReorderBuffer<T>
+{
+
+	private static final long						DEFAULT_MAX_MEMORY	= 64L * 1024 * 1024;
+
+	private final Sort<T>								sort;
+	private final Comparator<T>					comparator;
+	private final ToLongFunction<? super T>	eventTime;
+	private final long									maxLateness;
+	private final SortOutCallback<T>		outCallback;
+	private final PriorityQueue<T>			heap;
+	private final List<FileWrapper<T>>	runs								= new ArrayList<FileWrapper<T>>();
+	private SortOutCallback<T>					lateCallback;
+	private long												maxRecords					= Long.MAX_VALUE;
+	private long												maxMemory						= DEFAULT_MAX_MEMORY;
+	private long												heapBytes;
+	private long												runRecords;
+	private long												watermark						= Long.MIN_VALUE;
+	private long												lateRecords;
+	private T														lastEmitted;
+	private boolean											closed							= false;
+
+	/**
+	 * Constructor for ReorderBuffer
+	 *
+	 * @param sort        - the Sort whose work files and statistics are used -
+	 *                    e.g. a new ObjectSort
+	 * @param comparator  - orders the records, by event time first
+	 * @param eventTime   - gives the event time of a record
+	 * @param maxLateness - how far, in event time, a record may arrive behind
+	 *                    the latest record seen and still be put in order
+	 * @param outCallback - receives the records in order
+	 * @param tempDir     - String of the fully qualified directory name for work
+	 *                    files (if required)
+	 * @throws IOException
+	 */
+	public ReorderBuffer(	Sort<T> sort,
+												Comparator<T> comparator,
+												ToLongFunction<? super T> eventTime,
+												long maxLateness,
+												SortOutCallback<T> outCallback,
+												String tempDir) throws IOException
+	{
+		this(sort, comparator, eventTime, maxLateness, outCallback, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Constructor for ReorderBuffer
+	 *
+	 * @param sort        - the Sort whose work files and statistics are used -
+	 *                    e.g. a new ObjectSort
+	 * @param comparator  - orders the records, by event time first
+	 * @param eventTime   - gives the event time of a record
+	 * @param maxLateness - how far, in event time, a record may arrive behind
+	 *                    the latest record seen and still be put in order
+	 * @param outCallback - receives the records in order
+	 * @param tempDirs    - List of the fully qualified directory names for work
+	 *                    files (if required)
+	 * @throws IOException
+	 */
+	public ReorderBuffer(	Sort<T> sort,
+												Comparator<T> comparator,
+												ToLongFunction<? super T> eventTime,
+												long maxLateness,
+												SortOutCallback<T> outCallback,
+												List<String> tempDirs) throws IOException
+	{
+		sort.sortIn		= null;
+		sort.sortOut	= null;
+
+		if (!sort.startRuns(comparator, tempDirs))
+			throw new IOException("cannot access temp directories " + tempDirs);
+
+		this.sort					= sort;
+		this.comparator		= sort.runComparator;
+		this.eventTime		= eventTime;
+		this.maxLateness	= Math.max(0, maxLateness);
+		this.outCallback	= outCallback;
+		heap							= new PriorityQueue<T>(this.comparator);
+	}
+
+	/**
+	 * @param maxRecords - the reorder window: the most records held before the
+	 *                   first is passed on whatever its event time
+	 */
+	public void setMaxRecords(long maxRecords)
+	{
+		this.maxRecords = Math.max(1, maxRecords);
+	}
+
+	/**
+	 * @param maxMemory - the estimated bytes of records held in memory before
+	 *                  they are spilled to a work file, default 64MB
+	 */
+	public void setMaxMemory(long maxMemory)
+	{
+		this.maxMemory = Math.max(1, maxMemory);
+	}
+
+	/**
+	 * @param lateCallback - receives records that arrive too late to be put in
+	 *                     order, or null to pass them to the output at once
+	 */
+	public void setLateCallback(SortOutCallback<T> lateCallback)
+	{
+		this.lateCallback = lateCallback;
+	}
+
+	/**
+	 * Add the next record of the stream, passing on every record it releases.
+	 *
+	 * @param record - the record
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public synchronized void add(T record) throws IOException,
+																				ClassNotFoundException
+	{
+		if (closed)
+			throw new IllegalStateException("reorder buffer is closed");
+
+		sort.stats.addRecordsRead(1);
+
+		if (lastEmitted != null && comparator.compare(record, lastEmitted) < 0)
+		{
+			lateRecords++;
+			if (lateCallback != null)
+				lateCallback.consumeSortOut(record);
+			else
+				emit(record);
+			return;
+		}
+
+		heap.add(record);
+		heapBytes += sort.estimateSize(record);
+
+		long time = eventTime.applyAsLong(record);
+		if (time - maxLateness > watermark)
+			watermark = time - maxLateness;
+
+		drain();
+
+		if (heapBytes > maxMemory)
+			spill();
+	}
+
+	/**
+	 * Move the watermark on, for example when the input has been idle, and pass
+	 * on the records it releases.
+	 *
+	 * @param time - the new watermark, ignored if it is behind the current one
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public synchronized void advanceWatermark(long time) throws IOException,
+																											ClassNotFoundException
+	{
+		if (time > watermark)
+			watermark = time;
+
+		drain();
+	}
+
+	/**
+	 * Pass on every held record in order and end the output.
+	 *
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public synchronized void close() throws IOException,
+																	ClassNotFoundException
+	{
+		if (closed)
+			return;
+
+		closed = true;
+
+		for (T next = first(); next != null; next = first())
+			emit(take(next));
+
+		outCallback.consumeSortOut(null);
+		sort.endSort();
+	}
+
+	/**
+	 * @return long - the current watermark
+	 */
+	public synchronized long getWatermark()
+	{
+		return watermark;
+	}
+
+	/**
+	 * @return long - the records held in memory and in work files
+	 */
+	public synchronized long getBufferedRecords()
+	{
+		return heap.size() + runRecords;
+	}
+
+	/**
+	 * @return long - the records that arrived too late to be put in order
+	 */
+	public synchronized long getLateRecords()
+	{
+		return lateRecords;
+	}
+
+	private void drain() throws IOException,
+											ClassNotFoundException
+	{
+		for (T next = first(); next != null; next = first())
+		{
+			if (eventTime.applyAsLong(next) > watermark && heap.size() + runRecords <= maxRecords)
+				break;
+
+			emit(take(next));
+		}
+	}
+
+	/**
+	 * @return T - the first held record, in memory or in a run, null if none
+	 */
+	private T first()
+	{
+		T first = heap.peek();
+
+		for (FileWrapper<T> run : runs)
+		{
+			T head = run.getCurrentInputItem();
+			if (first == null || comparator.compare(head, first) < 0)
+				first = head;
+		}
+
+		return first;
+	}
+
+	/**
+	 * Remove a record returned by first from wherever it is held.
+	 */
+	private T take(T record) throws IOException,
+												ClassNotFoundException
+	{
+		if (record == heap.peek())
+		{
+			heap.poll();
+			heapBytes -= sort.estimateSize(record);
+			return record;
+		}
+
+		for (int i = 0; i < runs.size(); i++)
+		{
+			FileWrapper<T> run = runs.get(i);
+
+			if (run.getCurrentInputItem() == record)
+			{
+				advance(run);
+				if (run.getCurrentInputItem() == null)
+					closeRun(run);
+				break;
+			}
+		}
+
+		return record;
+	}
+
+	private void advance(FileWrapper<T> run) throws ClassNotFoundException
+	{
+		run.getNextInput();
+		runRecords--;
+	}
+
+	private void emit(T record)
+	{
+		outCallback.consumeSortOut(record);
+		sort.stats.addRecordsWritten(1);
+
+		if (lastEmitted == null || comparator.compare(record, lastEmitted) > 0)
+			lastEmitted = record;
+	}
+
+	/**
+	 * Sort the heap into a new run, merging the runs into one first if there
+	 * are as many as the merge fan-in.
+	 */
+	private void spill() throws IOException,
+											ClassNotFoundException
+	{
+		if (runs.size() + 1 >= sort.getMergeFanIn())
+			mergeRuns();
+
+		long		start		= System.nanoTime();
+		List<T>	records	= new ArrayList<T>(heap);
+		heap.clear();
+		heapBytes = 0;
+
+		FileWrapper<T> run = sort.getNextWorkFile(sort.workDirs.nextDir());
+		run.startOutStream();
+		run.pushData(records, comparator);
+		run.stopOutStream();
+		openRun(run, run.getRecordsWritten());
+
+		sort.stats.runCreated();
+		sort.stats.addPhaseNanos(SortStats.Phase.SPILL, System.nanoTime() - start);
+	}
+
+	private void mergeRuns() throws IOException,
+													ClassNotFoundException
+	{
+		long						start		= System.nanoTime();
+		FileWrapper<T>	merged	= sort.getNextWorkFile(sort.workDirs.nextDir());
+		merged.startOutStream();
+
+		while (!runs.isEmpty())
+		{
+			FileWrapper<T> next = runs.get(0);
+
+			for (FileWrapper<T> run : runs)
+			{
+				if (comparator.compare(run.getCurrentInputItem(), next.getCurrentInputItem()) < 0)
+					next = run;
+			}
+
+			merged.write(next.getCurrentInputItem());
+			advance(next);
+			if (next.getCurrentInputItem() == null)
+				closeRun(next);
+		}
+
+		merged.stopOutStream();
+		openRun(merged, merged.getRecordsWritten());
+
+		sort.stats.addPhaseNanos(SortStats.Phase.MERGE, System.nanoTime() - start);
+	}
+
+	private void openRun(FileWrapper<T> run, long records) throws IOException,
+																												ClassNotFoundException
+	{
+		sort.stats.addBytesSpilled(run.getBytesWritten());
+		run.startInStream();
+
+		if (run.getCurrentInputItem() == null)
+		{
+			closeRun(run);
+			return;
+		}
+
+		runs.add(run);
+		runRecords += records;
+	}
+
+	private void closeRun(FileWrapper<T> run) throws IOException
+	{
+		run.stopInStream();
+		sort.stats.addBytesReadFromWorkFiles(run.getBytesRead());
+		run.deleteFile();
+		runs.remove(run);
+	}
+
+}
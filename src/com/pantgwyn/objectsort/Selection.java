@@ -0,0 +1,318 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.BinaryOperator;
+
+/**
+ * Finds the records at given ranks of a file without sorting all of it.
+ * <p>
+ * A first pass counts the records and keeps a uniform sample of them. For
+ * each rank the sample gives a band of values that almost certainly holds the
+ * record of that rank. A second pass counts the records below each band and
+ * passes the records inside the bands to the Sort, which sorts them in memory
+ * or spills them within its memory budget as usual. The records at the ranks
+ * are then read off the sorted bands. If a band turns out to miss its rank
+ * the rank is tried again with a wider band.
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+class Selection<T>
+{
+
+	private static final int	SAMPLE_RECORDS	= 100000;
+	private static final int	MAX_ATTEMPTS		= 4;
+
+	private final Sort<T>				sort;
+	private final String				sortInName;
+	private final Comparator<T>	comparator;
+	private final List<String>	tempDirs;
+	private final List<T>				sample	= new ArrayList<T>();
+	private long								records;
+
+	/**
+	 * A range of values [lo, hi] kept by the second pass. A null lo or hi is
+	 * unbounded.
+	 */
+	private class Band
+	{
+		private T			lo;
+		private T			hi;
+		private long	below;
+		private long	inside;
+	}
+
+	Selection(Sort<T> sort, String sortInName, Comparator<T> comparator, List<String> tempDirs)
+	{
+		this.sort				= sort;
+		this.sortInName	= sortInName;
+		this.comparator	= comparator;
+		this.tempDirs		= tempDirs;
+	}
+
+	/**
+	 * Count the records of the file and take a uniform sample of them.
+	 *
+	 * @return long - the number of records
+	 */
+	long countAndSample() throws ClassNotFoundException,
+												IOException
+	{
+		SplittableRandom	random	= new SplittableRandom();
+		FileWrapper<T>		in			= sort.newSortIn(sortInName);
+
+		in.startInStream();
+
+		for (T read = in.getCurrentInputItem(); read != null; read = in.getCurrentInputItem())
+		{
+			T item = sort.ingest(read);
+			in.getNextInput();
+
+			if (item == null)
+				continue;
+
+			if (records < SAMPLE_RECORDS)
+				sample.add(item);
+			else
+			{
+				long slot = random.nextLong(records + 1);
+				if (slot < SAMPLE_RECORDS)
+					sample.set((int) slot, item);
+			}
+
+			records++;
+		}
+
+		in.stopInStream();
+
+		sample.sort(comparator);
+
+		return records;
+	}
+
+	/**
+	 * Find the records at the given ranks. countAndSample must be called first.
+	 *
+	 * @param ranks - 0 based ranks
+	 * @return List - the record at each rank, null for a rank beyond the end
+	 */
+	List<T> select(long[] ranks) throws ClassNotFoundException,
+														IOException
+	{
+		List<T> results = new ArrayList<T>();
+		for (int i = 0; i < ranks.length; i++)
+			results.add(null);
+
+		long[]						wanted	= ranks.clone();
+		long								spread	= 4 * (long) Math.sqrt(sample.size()) + 8;
+		BinaryOperator<T>	reducer	= sort.reducer;
+
+		// ranks count the records as read, so none may be combined
+		sort.reducer = null;
+
+		try
+		{
+			for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+			{
+				long[] missed = selectBand(wanted, spread, ranks, results, attempt == MAX_ATTEMPTS - 1);
+
+				if (missed.length == 0)
+					break;
+
+				wanted	= missed;
+				spread	*= 8;
+			}
+		} finally
+		{
+			sort.reducer = reducer;
+		}
+
+		return results;
+	}
+
+	/**
+	 * One band pass over the file.
+	 *
+	 * @param wanted  - the ranks still to find
+	 * @param spread  - half the width of each band, in sample records
+	 * @param ranks   - all the requested ranks
+	 * @param results - the results, in the order of ranks
+	 * @param last    - true to use a single unbounded band
+	 * @return long[] - the ranks the bands missed
+	 */
+	private long[] selectBand(long[] wanted, long spread, long[] ranks, List<T> results, boolean last)
+			throws ClassNotFoundException,
+			IOException
+	{
+		List<Band> bands = new ArrayList<Band>();
+
+		long[] sorted = wanted.clone();
+		Arrays.sort(sorted);
+
+		for (long rank : sorted)
+		{
+			if (rank < 0 || rank >= records)
+				continue;
+
+			long	position	= records == 0 ? 0 : rank * sample.size() / records;
+			Band	band			= new Band();
+
+			if (!last && position - spread >= 0)
+				band.lo = sample.get((int) (position - spread));
+			if (!last && position + spread < sample.size())
+				band.hi = sample.get((int) (position + spread));
+
+			Band previous = bands.isEmpty() ? null : bands.get(bands.size() - 1);
+
+			if (previous != null && (previous.hi == null || band.lo == null || comparator.compare(band.lo, previous.hi) <= 0))
+				previous.hi = band.hi == null || previous.hi == null ? null : max(previous.hi, band.hi);
+			else
+				bands.add(band);
+		}
+
+		if (bands.isEmpty())
+			return new long[0];
+
+		long[] gaps = new long[bands.size() + 1];
+
+		// the bands are read back from the runs, never written to a sortout file
+		sort.sortIn		= null;
+		sort.sortOut	= null;
+
+		if (!sort.startRuns(comparator, tempDirs))
+			throw new IOException("cannot access temp directories " + tempDirs);
+
+		FileWrapper<T> in = sort.newSortIn(sortInName);
+		in.startInStream();
+
+		for (T read = in.getCurrentInputItem(); read != null; read = in.getCurrentInputItem())
+		{
+			T item = sort.ingest(read);
+			in.getNextInput();
+
+			if (item == null)
+				continue;
+
+			int		index	= bandFor(bands, item);
+			Band	band	= index < 0 ? null : bands.get(index);
+
+			if (band != null && (band.hi == null || comparator.compare(item, band.hi) <= 0))
+			{
+				band.inside++;
+				sort.addRecord(item);
+			} else
+				gaps[index + 1]++;
+		}
+
+		in.stopInStream();
+		sort.stats.setInputBytes(in.getBytesRead());
+		sort.endRuns();
+
+		long below = 0;
+		for (int i = 0; i < bands.size(); i++)
+		{
+			below									+= gaps[i];
+			bands.get(i).below	= below;
+			below									+= bands.get(i).inside;
+		}
+
+		List<Long> missed = new ArrayList<Long>();
+		for (long rank : sorted)
+		{
+			if (rank < 0 || rank >= records)
+				continue;
+
+			boolean found = false;
+			for (Band band : bands)
+			{
+				if (rank >= band.below && rank < band.below + band.inside)
+					found = true;
+			}
+
+			if (!found)
+				missed.add(rank);
+		}
+
+		MergeCursor<T>	cursor		= sort.openCursor();
+		int							next			= 0;
+		long						position	= 0;
+
+		try
+		{
+			for (Band band : bands)
+			{
+				for (long rank = band.below; rank < band.below + band.inside; rank++)
+				{
+					T item = cursor.next();
+
+					while (next < sorted.length && sorted[next] < rank)
+						next++;
+
+					for (int i = next; i < sorted.length && sorted[i] == rank; i++)
+						setResult(ranks, results, rank, item);
+
+					position++;
+				}
+			}
+		} finally
+		{
+			cursor.close();
+		}
+
+		sort.stats.addRecordsWritten(position);
+		sort.endSort();
+
+		long[] result = new long[missed.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = missed.get(i);
+
+		return result;
+	}
+
+	/**
+	 * @return int - the index of the last band starting at or below the record,
+	 *         -1 if the record is below every band
+	 */
+	private int bandFor(List<Band> bands, T item)
+	{
+		int	low		= 0;
+		int	high	= bands.size() - 1;
+		int	found	= -1;
+
+		while (low <= high)
+		{
+			int		middle	= (low + high) >>> 1;
+			Band	band		= bands.get(middle);
+
+			if (band.lo == null || comparator.compare(band.lo, item) <= 0)
+			{
+				found	= middle;
+				low		= middle + 1;
+			} else
+				high = middle - 1;
+		}
+
+		return found;
+	}
+
+	private void setResult(long[] ranks, List<T> results, long rank, T item)
+	{
+		for (int i = 0; i < ranks.length; i++)
+		{
+			if (ranks[i] == rank)
+				results.set(i, item);
+		}
+	}
+
+	private T max(T a, T b)
+	{
+		return comparator.compare(a, b) >= 0 ? a : b;
+	}
+
+}
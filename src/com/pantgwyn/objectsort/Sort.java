@@ -1,16 +1,39 @@
 package com.pantgwyn.objectsort;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Abstract class for performing all sort types.
@@ -31,13 +54,68 @@ public abstract class Sort<T>
 	protected static final Logger		LOG										= Logger.getLogger(Sort.class.getName());
 	protected static final double		DEFAULT_MEMORY_FACTOR	= 0.5;
 	protected static final int			MAX_WORK_FILES				= 32;
+	protected static final String		WORK_FILE_PREFIX			= "sortWork";
+	protected static final int			SIZE_SAMPLE_INTERVAL	= 4096;
+	protected static final long			DEFAULT_OBJECT_SIZE		= 256;
+	protected static final int			CHUNKS_PER_THREAD			= 4;
+	protected static final String		CHECKPOINT_SUFFIX			= ".checkpoint";
+	protected static final int			PLAN_SAMPLE_RECORDS		= 100000;
 
 	protected double								memoryFactor;
 	protected int										queueLimit;
 	protected int										workFileId;
 	protected Level									logLevel;
 	protected List<FileWrapper<T>>	workFileList;
+	protected List<FileWrapper<T>>	memoryRuns;
+	protected long									memoryRunBudget;
+	protected long									memoryRunBytes;
 	protected long									recordsRead;
+	protected Placement							placement;
+	protected WorkDirectories				workDirs;
+	protected String								workFilePrefix;
+	protected long									memoryBudget;
+	protected MemoryGovernor.Quota	memoryQuota;
+	protected long									bufferLimit;
+	protected long									bufferBytes;
+	protected long									sampledBytes;
+	protected long									sampledRecords;
+	protected volatile long				sampledSize;
+	protected final AtomicLong		estimates	= new AtomicLong();
+	protected SortStats							stats;
+	protected List<SortListener>		listeners;
+	protected ObjectName						mbeanName;
+	protected int										naturalRunStreams;
+	protected Comparator<T>					runComparator;
+	protected List<T>								objQueue;
+	protected double								freeSpaceTarget;
+	protected long									phaseStart;
+	protected boolean								outputComplete;
+	protected NaturalRuns<T>				naturalRuns;
+	protected List<FileWrapper<T>>	naturalRunFiles;
+	protected boolean								naturalRunDirect;
+	protected long									naturalRunRecords;
+	protected int										parallelism;
+	protected ExecutorService				executor;
+	protected boolean								sortedInputRuns;
+	protected Codec									workFileCodec;
+	protected Codec									outputCodec;
+	protected boolean								detectInputCodec;
+	protected boolean								checkpoint;
+	protected String								checkpointName;
+	protected List<String>					checkpointDirs;
+	protected List<FileWrapper<T>>	retainedRuns;
+	protected int										mergeFanIn;
+	protected BinaryOperator<T>			reducer;
+	protected Predicate<? super T>	filter;
+	protected UnaryOperator<T>			projection;
+	protected long									recordsFiltered;
+	protected SortCache							cache;
+	protected String								cacheId;
+	protected String								filterId;
+	protected String								projectionId;
+	protected String								reducerId;
+	protected RecordCodec<T>				recordCodec;
+	protected boolean								recordReuse;
 
 	protected FileWrapper<T>				sortIn;
 	protected FileWrapper<T>				sortOut;
@@ -90,7 +168,14 @@ public abstract class Sort<T>
 	public Sort(double memoryFactor, boolean verbose)
 	{
 		workFileList			= new ArrayList<FileWrapper<T>>();
+		memoryRuns				= new ArrayList<FileWrapper<T>>();
 		this.memoryFactor	= memoryFactor;
+		placement					= Placement.ROUND_ROBIN;
+		workFilePrefix		= WORK_FILE_PREFIX;
+		stats							= new SortStats();
+		parallelism				= 1;
+		mergeFanIn				= MAX_WORK_FILES;
+		listeners					= new CopyOnWriteArrayList<SortListener>();
 
 		logLevel					= Level.FINE;
 		if (verbose)
@@ -127,12 +212,42 @@ public abstract class Sort<T>
 																			IOException
 	{
 
-		sortIn	= new FileWrapper<T>(getSortType(), sortInName);
-		sortOut	= new FileWrapper<T>(getSortType(), sortOutName);
+		sortIn	= newSortIn(sortInName);
+		sortOut	= newFileWrapper(sortOutName);
 
 		return sort(comparator, tempDir);
 	}
 
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort from a sortin to a sortout file, striping any work
+	 * files across several temporary directories.
+	 *
+	 * @param sortInName   - String of the fully qualified sortin file name
+	 * @param sortOutName- String of the fully qualified sortout file name
+	 * @param comparator   - The Comparator for Class T that will be called to
+	 *                     perform the sort.
+	 * @param tempDirs     - List of the fully qualified directory names for work
+	 *                     files (if required) - ideally one per device
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											String sortInName,
+											String sortOutName,
+											Comparator<T> comparator,
+											List<String> tempDirs)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		sortIn	= newSortIn(sortInName);
+		sortOut	= newFileWrapper(sortOutName);
+
+		return sort(comparator, tempDirs);
+	}
+
 	/**
 	 * Perform an object sort of Objects of class T.
 	 * <p>
@@ -157,266 +272,2742 @@ public abstract class Sort<T>
 																			throws ClassNotFoundException,
 																			IOException
 	{
-		sortIn	= new FileWrapper<T>(getSortType(), sortInName);
-		sortOut	= new FileWrapper<T>(getSortType(), outCallback);
-
-		return sort(comparator, tempDir);
+		sortIn	= newSortIn(sortInName);
+		sortOut	= new FileWrapper<T>(getSortType(), outCallback);
+
+		return sort(comparator, tempDir);
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort from a sortin file and passes the results to a
+	 * SortOutCallback, striping any work files across several temporary
+	 * directories.
+	 *
+	 * @param sortInName  - String of the fully qualified sortin file name
+	 * @param outCallback - an implementor of the SortOutCallback interface
+	 * @param comparator  - The Comparator for Class T that will be called to
+	 *                    perform the sort.
+	 * @param tempDirs    - List of the fully qualified directory names for work
+	 *                    files (if required) - ideally one per device
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											String sortInName,
+											SortOutCallback<T> outCallback,
+											Comparator<T> comparator,
+											List<String> tempDirs)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		sortIn	= newSortIn(sortInName);
+		sortOut	= new FileWrapper<T>(getSortType(), outCallback);
+
+		return sort(comparator, tempDirs);
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort obtaining input objects from a SortInCallback and passes
+	 * the results to a SortOutCallback.
+	 *
+	 * @param inCallback  - an implementor of the SortInCallback interface
+	 * @param outCallback - an implementor of the SortOutCallback interface
+	 * @param comparator  - The Comparator for Class T that will be called to
+	 *                    perform the sort.
+	 * @param tempDir     - - String of the fully qualified directory name for work
+	 *                    files (if required)
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											SortInCallback<T> inCallback,
+											SortOutCallback<T> outCallback,
+											Comparator<T> comparator,
+											String tempDir)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		sortIn	= new FileWrapper<T>(getSortType(), inCallback);
+		sortOut	= new FileWrapper<T>(getSortType(), outCallback);
+
+		return sort(comparator, tempDir);
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort obtaining input objects from a SortInCallback and passes
+	 * the results to a SortOutCallback, striping any work files across several
+	 * temporary directories.
+	 *
+	 * @param inCallback  - an implementor of the SortInCallback interface
+	 * @param outCallback - an implementor of the SortOutCallback interface
+	 * @param comparator  - The Comparator for Class T that will be called to
+	 *                    perform the sort.
+	 * @param tempDirs    - List of the fully qualified directory names for work
+	 *                    files (if required) - ideally one per device
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											SortInCallback<T> inCallback,
+											SortOutCallback<T> outCallback,
+											Comparator<T> comparator,
+											List<String> tempDirs)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		sortIn	= new FileWrapper<T>(getSortType(), inCallback);
+		sortOut	= new FileWrapper<T>(getSortType(), outCallback);
+
+		return sort(comparator, tempDirs);
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort obtaining input objects from a SortInCallback and writes
+	 * the result to the sortOut file name.
+	 *
+	 * @param inCallback   - an implementor of the SortInCallback interface
+	 * @param sortOutName- String of the fully qualified sortout file name
+	 * @param comparator   - The Comparator for Class T that will be called to
+	 *                     perform the sort.
+	 * @param tempDir      - - String of the fully qualified directory name for work
+	 *                     files (if required)
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											SortInCallback<T> inCallback,
+											String sortOutName,
+											Comparator<T> comparator,
+											String tempDir)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		sortIn	= new FileWrapper<T>(getSortType(), inCallback);
+		sortOut	= newFileWrapper(sortOutName);
+		return sort(comparator, tempDir);
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort obtaining input objects from a SortInCallback and writes
+	 * the result to the sortOut file name, striping any work files across several
+	 * temporary directories.
+	 *
+	 * @param inCallback   - an implementor of the SortInCallback interface
+	 * @param sortOutName- String of the fully qualified sortout file name
+	 * @param comparator   - The Comparator for Class T that will be called to
+	 *                     perform the sort.
+	 * @param tempDirs     - List of the fully qualified directory names for work
+	 *                     files (if required) - ideally one per device
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											SortInCallback<T> inCallback,
+											String sortOutName,
+											Comparator<T> comparator,
+											List<String> tempDirs)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		sortIn	= new FileWrapper<T>(getSortType(), inCallback);
+		sortOut	= newFileWrapper(sortOutName);
+		return sort(comparator, tempDirs);
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort from several sortin files to a sortout file. The files
+	 * are read concurrently by the parallelism threads.
+	 *
+	 * @param sortInNames  - List of the fully qualified sortin file names - see
+	 *                     glob
+	 * @param sortOutName- String of the fully qualified sortout file name
+	 * @param comparator   - The Comparator for Class T that will be called to
+	 *                     perform the sort.
+	 * @param tempDir      - String of the fully qualified directory name for work
+	 *                     files (if required)
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											List<String> sortInNames,
+											String sortOutName,
+											Comparator<T> comparator,
+											String tempDir)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		return sort(sortInNames, sortOutName, comparator, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort from several sortin files to a sortout file, striping
+	 * any work files across several temporary directories. The files are read
+	 * concurrently by the parallelism threads.
+	 *
+	 * @param sortInNames  - List of the fully qualified sortin file names - see
+	 *                     glob
+	 * @param sortOutName- String of the fully qualified sortout file name
+	 * @param comparator   - The Comparator for Class T that will be called to
+	 *                     perform the sort.
+	 * @param tempDirs     - List of the fully qualified directory names for work
+	 *                     files (if required) - ideally one per device
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											List<String> sortInNames,
+											String sortOutName,
+											Comparator<T> comparator,
+											List<String> tempDirs)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		sortIn	= null;
+		sortOut	= newFileWrapper(sortOutName);
+
+		return sortFiles(sortInNames, comparator, tempDirs);
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort from several sortin files and passes the results to a
+	 * SortOutCallback. The files are read concurrently by the parallelism
+	 * threads.
+	 *
+	 * @param sortInNames - List of the fully qualified sortin file names - see
+	 *                    glob
+	 * @param outCallback - an implementor of the SortOutCallback interface
+	 * @param comparator  - The Comparator for Class T that will be called to
+	 *                    perform the sort.
+	 * @param tempDir     - String of the fully qualified directory name for work
+	 *                    files (if required)
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											List<String> sortInNames,
+											SortOutCallback<T> outCallback,
+											Comparator<T> comparator,
+											String tempDir)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		return sort(sortInNames, outCallback, comparator, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Perform an object sort of Objects of class T.
+	 * <p>
+	 * This executes a sort from several sortin files and passes the results to a
+	 * SortOutCallback, striping any work files across several temporary
+	 * directories. The files are read concurrently by the parallelism threads.
+	 *
+	 * @param sortInNames - List of the fully qualified sortin file names - see
+	 *                    glob
+	 * @param outCallback - an implementor of the SortOutCallback interface
+	 * @param comparator  - The Comparator for Class T that will be called to
+	 *                    perform the sort.
+	 * @param tempDirs    - List of the fully qualified directory names for work
+	 *                    files (if required) - ideally one per device
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean sort(
+											List<String> sortInNames,
+											SortOutCallback<T> outCallback,
+											Comparator<T> comparator,
+											List<String> tempDirs)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		sortIn	= null;
+		sortOut	= new FileWrapper<T>(getSortType(), outCallback);
+
+		return sortFiles(sortInNames, comparator, tempDirs);
+	}
+
+	/**
+	 * List the files matching a glob pattern, for use as sortin files.
+	 * <p>
+	 * The pattern follows java.nio.file.FileSystem.getPathMatcher, for example
+	 * <code>/data/in/2021-01-*&#47;*.csv</code>. Directories up to the first
+	 * component containing a wildcard are taken literally.
+	 *
+	 * @param pattern - the glob pattern
+	 * @return List - the matching file names in name order
+	 * @throws IOException
+	 */
+	public static List<String> glob(String pattern) throws IOException
+	{
+		Path	base	= Paths.get(pattern).toAbsolutePath();
+		Path	root	= base.getRoot();
+
+		for (Path part : base)
+		{
+			if (part.toString().matches(".*[*?\\[{].*"))
+				break;
+			root = root.resolve(part);
+		}
+
+		if (root.equals(base))
+			return Files.isRegularFile(base) ? Collections.singletonList(base.toString()) : new ArrayList<String>();
+
+		PathMatcher		matcher	= base.getFileSystem().getPathMatcher("glob:" + base.toString());
+		List<String>	names		= new ArrayList<String>();
+
+		int depth = pattern.contains("**") ? Integer.MAX_VALUE : base.getNameCount() - root.getNameCount();
+
+		try (Stream<Path> paths = Files.walk(root, depth))
+		{
+			paths.filter(path -> Files.isRegularFile(path) && matcher.matches(path))
+					.forEach(path -> names.add(path.toString()));
+		}
+
+		Collections.sort(names);
+
+		return names;
+	}
+
+	/**
+	 * Set how work files are spread across multiple temporary directories.
+	 *
+	 * @param placement - ROUND_ROBIN (the default) or FREE_SPACE
+	 */
+	public void setPlacement(Placement placement)
+	{
+		this.placement = placement;
+	}
+
+	/**
+	 * @return Placement - how work files are spread across temporary directories
+	 */
+	public Placement getPlacement()
+	{
+		return placement;
+	}
+
+	/**
+	 * Set a fixed memory budget for the in-memory runs of this sort.
+	 * <p>
+	 * When set the run size is governed by the estimated size of the buffered
+	 * records rather than by the free heap, so several sorts can share a JVM
+	 * without each sizing itself from the same free space.
+	 *
+	 * @param memoryBudget - budget in bytes, or 0 to use the memory factor
+	 */
+	public void setMemoryBudget(long memoryBudget)
+	{
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * @return long - the memory budget in bytes, 0 if the memory factor is used
+	 */
+	public long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	/**
+	 * Set a residual budget for sorted runs kept in memory.
+	 * <p>
+	 * A full buffer is normally sorted and spilled to a work file. While the
+	 * runs kept in memory fit within this budget the sorted buffer is kept
+	 * instead, and joins the final merge alongside the work files. The last
+	 * buffer of the input is always kept in memory, so an input only a little
+	 * larger than the buffer costs little more than an in-memory sort. The
+	 * budget is in addition to the memory used by the buffer. Runs are not kept
+	 * in memory while a checkpoint is recorded, as a resumed sort could not
+	 * find them.
+	 *
+	 * @param memoryRunBudget - budget in bytes, default 0
+	 */
+	public void setMemoryRunBudget(long memoryRunBudget)
+	{
+		this.memoryRunBudget = Math.max(0, memoryRunBudget);
+	}
+
+	/**
+	 * @return long - the residual budget in bytes for runs kept in memory
+	 */
+	public long getMemoryRunBudget()
+	{
+		return memoryRunBudget;
+	}
+
+	/**
+	 * Set the prefix used to name the work files of this sort.
+	 * <p>
+	 * Sorts sharing a temporary directory must use different prefixes.
+	 *
+	 * @param workFilePrefix - the work file name prefix, default sortWork
+	 */
+	public void setWorkFilePrefix(String workFilePrefix)
+	{
+		this.workFilePrefix = workFilePrefix;
+	}
+
+	/**
+	 * @return String - the prefix used to name the work files of this sort
+	 */
+	public String getWorkFilePrefix()
+	{
+		return workFilePrefix;
+	}
+
+	/**
+	 * Detect input that is already sorted, or made up of a few interleaved
+	 * sorted streams.
+	 * <p>
+	 * When a full buffer is found to consist of at most streams ascending runs
+	 * the runs are written without an in-memory sort and extended directly from
+	 * the input for as long as the input keeps to them. Input that is sorted
+	 * throughout is streamed straight to a sortOut file. Descending runs within
+	 * a buffer are already handled cheaply by the in-memory sort.
+	 *
+	 * @param streams - the number of interleaved sorted streams to look for, 0
+	 *                (the default) disables detection
+	 */
+	public void setNaturalRunStreams(int streams)
+	{
+		naturalRunStreams = Math.max(0, streams);
+	}
+
+	/**
+	 * @return int - the number of interleaved sorted streams detected, 0 if
+	 *         detection is disabled
+	 */
+	public int getNaturalRunStreams()
+	{
+		return naturalRunStreams;
+	}
+
+	/**
+	 * Set the number of threads used to read sortin files.
+	 * <p>
+	 * With more than one thread a TEXT or CSV input file is split into byte
+	 * ranges on record boundaries and each range is parsed, sorted and spilled
+	 * on its own thread. Several sortin files are read concurrently. Natural
+	 * run detection is not applied to a parallel read.
+	 *
+	 * @param parallelism - the number of reading threads, default 1
+	 */
+	public void setParallelism(int parallelism)
+	{
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * @return int - the number of threads used to read sortin files
+	 */
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Use sortin files that are already in order as merge runs.
+	 * <p>
+	 * When several sortin files are given each is first checked for order. A
+	 * sorted file joins the merge as it stands, without being buffered or
+	 * spilled, and is not deleted by the merge. The check stops at the first
+	 * record out of order, so costs little for unsorted files.
+	 *
+	 * @param sortedInputRuns - true to check sortin files for order, default
+	 *                        false
+	 */
+	public void setSortedInputRuns(boolean sortedInputRuns)
+	{
+		this.sortedInputRuns = sortedInputRuns;
+	}
+
+	/**
+	 * @return boolean - true if sortin files in order are used as merge runs
+	 */
+	public boolean getSortedInputRuns()
+	{
+		return sortedInputRuns;
+	}
+
+	/**
+	 * Compress the work files of the sort. Worth while when the temporary
+	 * directories are slower than the codec.
+	 *
+	 * @param workFileCodec - the codec, or null (the default) for uncompressed
+	 *                      work files
+	 */
+	public void setWorkFileCodec(Codec workFileCodec)
+	{
+		this.workFileCodec = workFileCodec;
+	}
+
+	/**
+	 * @return Codec - the codec of the work files, null if uncompressed
+	 */
+	public Codec getWorkFileCodec()
+	{
+		return workFileCodec;
+	}
+
+	/**
+	 * Compress a sortout file whatever its name. By default a sortout file is
+	 * compressed only when its name has the extension of a registered codec,
+	 * such as .gz. Sortin files are decompressed when their extension matches a
+	 * registered codec, see setDetectInputCodec.
+	 *
+	 * @param outputCodec - the codec, or null to choose by extension
+	 */
+	public void setOutputCodec(Codec outputCodec)
+	{
+		this.outputCodec = outputCodec;
+	}
+
+	/**
+	 * @return Codec - the codec set for sortout files, null if chosen by
+	 *         extension
+	 */
+	public Codec getOutputCodec()
+	{
+		return outputCodec;
+	}
+
+	/**
+	 * Also recognise a compressed sortin file by the magic bytes at its start
+	 * when its name has no codec extension. Only suitable for inputs that
+	 * cannot begin with those bytes, such as text; a binary record may well
+	 * begin with the magic number of a codec.
+	 *
+	 * @param detectInputCodec - true to check the first bytes of sortin files,
+	 *                         default false
+	 */
+	public void setDetectInputCodec(boolean detectInputCodec)
+	{
+		this.detectInputCodec = detectInputCodec;
+	}
+
+	/**
+	 * @return boolean - true if sortin files are checked for magic bytes
+	 */
+	public boolean isDetectInputCodec()
+	{
+		return detectInputCodec;
+	}
+
+	/**
+	 * Write work files with a record codec rather than the file format of the
+	 * sort type, e.g. in place of java serialization for an ObjectSort.
+	 *
+	 * @param recordCodec - the codec, or null (the default) for the format of
+	 *                    the sort type
+	 */
+	public void setRecordCodec(RecordCodec<T> recordCodec)
+	{
+		this.recordCodec = recordCodec;
+	}
+
+	/**
+	 * @return RecordCodec - the work file record codec, null if the format of
+	 *         the sort type is used
+	 */
+	public RecordCodec<T> getRecordCodec()
+	{
+		return recordCodec;
+	}
+
+	/**
+	 * Read the work files of a merge into reused record instances. Each input
+	 * of the merge then holds one record instance for the whole merge, filled
+	 * by RecordCodec.readInto, or one byte array for a BinarySort, so merging
+	 * allocates almost nothing per record.
+	 * <p>
+	 * Records are only reused by merges that write to a work file or the
+	 * sortout file, which encode each record before the next is read. Merges
+	 * whose records are handed on - to a SortOutCallback, a cursor, a join or
+	 * a group - or combined by a reducer always read new instances.
+	 *
+	 * @param recordReuse - true to reuse records, default false except for a
+	 *                    BinarySort
+	 */
+	public void setRecordReuse(boolean recordReuse)
+	{
+		this.recordReuse = recordReuse;
+	}
+
+	/**
+	 * @return boolean - true if merges reuse record instances
+	 */
+	public boolean isRecordReuse()
+	{
+		return recordReuse;
+	}
+
+	/**
+	 * Keep the output of file to file sorts in a cache. A sort whose sortin
+	 * file and comparator id match a cached output takes the output from the
+	 * cache without sorting.
+	 *
+	 * The key of a cached output is made from the sortin file, the comparator
+	 * id and the settings that change the output: the sort type, the output
+	 * codec and the ids of the filter, projection and reducer. A sort with a
+	 * filter, projection or reducer set without an id is not cached.
+	 *
+	 * @param cache        - the cache, or null (the default) for no caching
+	 * @param comparatorId - identifies the comparator, so must change whenever
+	 *                     the comparator does
+	 */
+	public void setCache(SortCache cache, String comparatorId)
+	{
+		this.cache		= cache;
+		this.cacheId	= comparatorId;
+	}
+
+	/**
+	 * @return SortCache - the cache, null if outputs are not cached
+	 */
+	public SortCache getCache()
+	{
+		return cache;
+	}
+
+	/**
+	 * Record the progress of a file to file sort so that it can be resumed.
+	 * <p>
+	 * A checkpoint file named after the work file prefix is kept in the first
+	 * temporary directory. It is rewritten each time a run is spilled or merged
+	 * and holds the runs completed, the number of sortin records they hold and,
+	 * unless sortin is compressed or of objects, the byte offset in sortin of the
+	 * next record.
+	 * If the JVM ends before the sort completes, resume carries on from the
+	 * last checkpoint. Applies to sorts read on a single thread.
+	 *
+	 * @param checkpoint - true to record checkpoints, default false
+	 */
+	public void setCheckpoint(boolean checkpoint)
+	{
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * @return boolean - true if checkpoints are recorded
+	 */
+	public boolean getCheckpoint()
+	{
+		return checkpoint;
+	}
+
+	/**
+	 * Resume a checkpointed sort from its last checkpoint.
+	 * <p>
+	 * The completed runs are kept and the sort carries on from the next sortin
+	 * record. Sortin is opened at the byte offset of that record if the
+	 * checkpoint holds one, otherwise the records the runs hold are read and
+	 * skipped. If all of the input had been read only the merge is repeated. The Sort must be set up as it was for the original sort, with
+	 * the same work file prefix.
+	 *
+	 * @param comparator - The Comparator for Class T used by the original sort
+	 * @param tempDir    - the first temporary directory of the original sort
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException            - if there is no usable checkpoint
+	 */
+	public boolean resume(
+												Comparator<T> comparator,
+												String tempDir)
+																				throws ClassNotFoundException,
+																				IOException
+	{
+		String			name				= getFileName(tempDir, workFilePrefix + CHECKPOINT_SUFFIX);
+		Properties	properties	= new Properties();
+
+		try (InputStream in = Files.newInputStream(Paths.get(name)))
+		{
+			properties.load(in);
+		}
+
+		if (!getSortType().name().equals(properties.getProperty("type")))
+			throw new IOException("checkpoint " + name + " is for a " + properties.getProperty("type") + " sort");
+
+		String	sortInName	= properties.getProperty("sortIn");
+		File		inFile			= new File(sortInName);
+
+		if (inFile.length() != Long.parseLong(properties.getProperty("sortInLength"))
+				|| inFile.lastModified() != Long.parseLong(properties.getProperty("sortInModified")))
+			throw new IOException("sortin " + sortInName + " has changed since checkpoint " + name);
+
+		List<String> tempDirs = new ArrayList<String>();
+		for (int i = 0; properties.containsKey("tempDir." + i); i++)
+			tempDirs.add(properties.getProperty("tempDir." + i));
+
+		List<String> runs = new ArrayList<String>();
+		for (int i = 0; properties.containsKey("run." + i); i++)
+		{
+			String run = properties.getProperty("run." + i);
+			if (!new File(run).exists())
+				throw new IOException("run " + run + " of checkpoint " + name + " is missing");
+			runs.add(run);
+		}
+
+		// text, CSV, JSONL and binary records are read on from the offset of the
+		// next record, objects and compressed files have to be read and skipped
+		String	offset		= properties.getProperty("sortInOffset");
+		long		consumed	= Long.parseLong(properties.getProperty("recordsConsumed"));
+
+		sortIn	= offset == null ? newSortIn(sortInName)
+				: newFileWrapper(sortInName, Long.parseLong(offset), inFile.length());
+		sortOut	= newFileWrapper(properties.getProperty("sortOut"));
+
+		if (!startRuns(comparator, tempDirs))
+			return false;
+
+		for (String run : runs)
+		{
+			FileWrapper<T> workFile = newFileWrapper(run);
+			workFile.setCodec(workFileCodec);
+			workFile.setRecordCodec(recordCodec);
+			workFileList.add(workFile);
+		}
+
+		boolean inputComplete = Boolean.parseBoolean(properties.getProperty("inputComplete"));
+
+		workFileId			= Integer.parseInt(properties.getProperty("workFileId"));
+		recordsFiltered	= Long.parseLong(properties.getProperty("recordsFiltered", "0"));
+		recordsRead			= consumed - recordsFiltered;
+		checkpointName	= name;
+		checkpointDirs	= tempDirs;
+		stats.addRecordsRead(recordsRead);
+		stats.addRecordsFiltered(recordsFiltered);
+
+		LOG.log(logLevel, "resuming from " + name + " with " + runs.size() + " runs holding " + recordsRead + " records"
+				+ (inputComplete ? " - input complete" : ""));
+
+		return completeSort(offset == null ? consumed : 0, inputComplete);
+	}
+
+	/**
+	 * Combine records that the comparator finds equal into one record.
+	 * <p>
+	 * The reducer runs as each run is spilled, in every merge and on the
+	 * output, including the output of groups, joins and flows, so a group-by
+	 * aggregation needs no second pass and no group is ever buffered. Runs
+	 * shrink as well when keys repeat within them. The reducer is given the
+	 * record so far and the next record of the same key and returns the
+	 * combined record, which may be the first one updated. Natural run
+	 * detection is not applied while a reducer is set, and select and
+	 * quantiles ignore it, as ranks count the records as read.
+	 *
+	 * @param reducer - the reducer, or null (the default) to keep every record
+	 */
+	public void setReducer(BinaryOperator<T> reducer)
+	{
+		setReducer(reducer, null);
+	}
+
+	/**
+	 * Combine records that the comparator finds equal into one record, as
+	 * setReducer(BinaryOperator) does, naming the reducer for the cache key.
+	 *
+	 * @param reducer   - the reducer, or null (the default) to keep every record
+	 * @param reducerId - identifies the reducer in cache keys, or null if the
+	 *                  output is not to be cached
+	 */
+	public void setReducer(BinaryOperator<T> reducer, String reducerId)
+	{
+		this.reducer		= reducer;
+		this.reducerId	= reducerId;
+	}
+
+	/**
+	 * @return BinaryOperator - the reducer, null if records are not combined
+	 */
+	public BinaryOperator<T> getReducer()
+	{
+		return reducer;
+	}
+
+	/**
+	 * Keep only the input records that pass a filter. The filter is applied as
+	 * each record is read, so the records it rejects never use sort memory,
+	 * work file space or merge I/O.
+	 *
+	 * @param filter - the filter, or null (the default) to keep every record
+	 */
+	public void setFilter(Predicate<? super T> filter)
+	{
+		setFilter(filter, null);
+	}
+
+	/**
+	 * Keep only the input records that pass a filter, as
+	 * setFilter(Predicate) does, naming the filter for the cache key.
+	 *
+	 * @param filter   - the filter, or null (the default) to keep every record
+	 * @param filterId - identifies the filter in cache keys, or null if the
+	 *                 output is not to be cached
+	 */
+	public void setFilter(Predicate<? super T> filter, String filterId)
+	{
+		this.filter		= filter;
+		this.filterId	= filterId;
+	}
+
+	/**
+	 * @return Predicate - the filter, null if every record is kept
+	 */
+	public Predicate<? super T> getFilter()
+	{
+		return filter;
+	}
+
+	/**
+	 * Replace each input record that passes the filter by a smaller record
+	 * holding only the fields the sort and its output need. The comparator,
+	 * reducer and output then see the projected records. A projection that
+	 * returns null drops the record.
+	 *
+	 * @param projection - the projection, or null (the default) to keep whole
+	 *                   records
+	 */
+	public void setProjection(UnaryOperator<T> projection)
+	{
+		setProjection(projection, null);
+	}
+
+	/**
+	 * Replace each input record by a smaller record, as
+	 * setProjection(UnaryOperator) does, naming the projection for the cache
+	 * key.
+	 *
+	 * @param projection   - the projection, or null (the default) to keep whole
+	 *                     records
+	 * @param projectionId - identifies the projection in cache keys, or null if
+	 *                     the output is not to be cached
+	 */
+	public void setProjection(UnaryOperator<T> projection, String projectionId)
+	{
+		this.projection		= projection;
+		this.projectionId	= projectionId;
+	}
+
+	/**
+	 * @return UnaryOperator - the projection, null if records are kept whole
+	 */
+	public UnaryOperator<T> getProjection()
+	{
+		return projection;
+	}
+
+	/**
+	 * Apply the filter and projection to a record read from the input.
+	 *
+	 * @param record - the record as read
+	 * @return T - the record to sort, null if it is dropped
+	 */
+	protected T ingest(T record)
+	{
+		if (filter != null && !filter.test(record))
+			return null;
+
+		return projection == null ? record : projection.apply(record);
+	}
+
+	/**
+	 * Set the number of work files merged at once. When run generation has
+	 * written this many work files they are merged into one before carrying
+	 * on. A higher fan-in means fewer merge passes but more open files and
+	 * smaller reads from each.
+	 *
+	 * @param mergeFanIn - the number of work files merged at once, default 32
+	 */
+	public void setMergeFanIn(int mergeFanIn)
+	{
+		this.mergeFanIn = Math.max(2, mergeFanIn);
+	}
+
+	/**
+	 * @return int - the number of work files merged at once
+	 */
+	public int getMergeFanIn()
+	{
+		return mergeFanIn;
+	}
+
+	/**
+	 * Predict the plan and resource use of sorting a file, without sorting it.
+	 * Natural runs are not predicted without a comparator.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param tempDir    - String of the fully qualified directory name for work
+	 *                   files
+	 * @return SortPlan - the predicted plan
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public SortPlan explain(
+													String sortInName,
+													String tempDir)
+																					throws ClassNotFoundException,
+																					IOException
+	{
+		return explain(sortInName, null, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Predict the plan and resource use of sorting a file, without sorting it.
+	 * Natural runs are not predicted without a comparator.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param tempDirs   - List of the fully qualified directory names for work
+	 *                   files
+	 * @return SortPlan - the predicted plan
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public SortPlan explain(
+													String sortInName,
+													List<String> tempDirs)
+																					throws ClassNotFoundException,
+																					IOException
+	{
+		return explain(sortInName, null, tempDirs);
+	}
+
+	/**
+	 * Predict the plan and resource use of sorting a file, without sorting it.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param comparator - the Comparator for Class T, used to find natural runs
+	 * @param tempDir    - String of the fully qualified directory name for work
+	 *                   files
+	 * @return SortPlan - the predicted plan
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public SortPlan explain(
+													String sortInName,
+													Comparator<T> comparator,
+													String tempDir)
+																					throws ClassNotFoundException,
+																					IOException
+	{
+		return explain(sortInName, comparator, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Predict the plan and resource use of sorting a file, without sorting it.
+	 * <p>
+	 * The start of sortin is sampled to estimate the number of records, the
+	 * heap used by each and their size in a work file. The memory budget (or
+	 * memory factor), parallelism and merge fan-in of this Sort then give the
+	 * runs, the merges and the bytes written to and read from work files. Runs
+	 * kept in memory under the memory run budget, and the last buffers of the
+	 * input, are not spilled. With a comparator, a sample in order - or made of
+	 * the natural run streams that are detected - is taken to mean the whole of
+	 * sortin keeps to that order.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param comparator - the Comparator for Class T, used to find natural runs,
+	 *                   or null
+	 * @param tempDirs   - List of the fully qualified directory names for work
+	 *                   files
+	 * @return SortPlan - the predicted plan
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public SortPlan explain(
+													String sortInName,
+													Comparator<T> comparator,
+													List<String> tempDirs)
+																					throws ClassNotFoundException,
+																					IOException
+	{
+		SortPlan	plan		= new SortPlan();
+		List<T>		sample	= new ArrayList<T>();
+		long			heap		= 0;
+
+		resetSizeSample();
+
+		FileWrapper<T>	in			= newSortIn(sortInName);
+		long						scanned	= 0;
+		in.startInStream();
+
+		for (T item = in.getCurrentInputItem(); item != null && scanned < PLAN_SAMPLE_RECORDS; item = in
+				.getCurrentInputItem())
+		{
+			T record = ingest(item);
+			in.getNextInput();
+			scanned++;
+
+			if (record == null)
+				continue;
+
+			sample.add(record);
+			heap += estimateSize(record);
+		}
+
+		plan.exact = in.getCurrentInputItem() == null;
+		long sampleInputBytes = in.getBytesRead();
+		in.stopInStream();
+
+		plan.inputBytes			= new File(sortInName).length();
+		plan.sampledRecords	= sample.size();
+		plan.mergeFanIn			= mergeFanIn;
+
+		if (sample.isEmpty())
+			return plan;
+
+		plan.records					= plan.exact ? sample.size() : plan.inputBytes * sample.size() / Math.max(1, sampleInputBytes);
+		plan.recordHeapBytes	= Math.max(1, heap / sample.size());
+
+		// write the sample as a work file to measure the spilled size
+		if (createDir(tempDirs.get(0)))
+		{
+			FileWrapper<T> workFile = newFileWrapper(getFileName(tempDirs.get(0), workFilePrefix + "Plan"));
+			workFile.setCodec(workFileCodec);
+			workFile.setRecordCodec(recordCodec);
+			workFile.startOutStream();
+			// pushData empties the list it is given, and the sample is kept for natural runs
+			workFile.pushData(new ArrayList<T>(sample));
+			workFile.stopOutStream();
+			workFile.deleteFile();
+
+			plan.workFileRecordBytes = Math.max(1, workFile.getBytesWritten() / plan.sampledRecords);
+		} else
+			plan.workFileRecordBytes = Math.max(1, sampleInputBytes / plan.sampledRecords);
+
+		for (String tempDir : tempDirs)
+			plan.tempFreeBytes += new File(tempDir).getUsableSpace();
+
+		plan.bufferBytes = getBufferLimit();
+		if (plan.bufferBytes <= 0)
+			plan.bufferBytes = (long) (getAvailableMemory() * Math.min(memoryFactor, 1));
+
+		// a line type file is read by a session, as sortFiles does, with a
+		// producer for each chunk the file is split into
+		boolean	session		= parallelism > 1 && isLineType();
+		int			producers	= 1;
+		if (session && inputCodec(sortInName) == null)
+			producers = (int) Math.max(1, Math.min(parallelism, plan.inputBytes / InputChunks.MIN_CHUNK_SIZE));
+
+		plan.recordsPerRun	= Math.max(1, plan.bufferBytes / producers / plan.recordHeapBytes);
+		plan.runs						= (plan.records + plan.recordsPerRun - 1) / plan.recordsPerRun;
+
+		if (plan.runs <= 1)
+			return plan;
+
+		if (comparator != null && explainNaturalRuns(plan, sample, comparator, session))
+			return plan;
+
+		// the last buffer of each producer joins the final merge from memory, as
+		// do full buffers while they fit the memory run budget - a buffer is full
+		// once the record that takes it past its limit is added
+		boolean	keepRuns			= session || !checkpoint;
+		long		lastInMemory	= !keepRuns ? 0 : session ? Math.min(producers, plan.runs) : 1;
+		long		runHeapBytes	= (plan.recordsPerRun + 1) * plan.recordHeapBytes;
+		long		memoryBytes		= 0;
+
+		// follow the merge policy of addRecord - merge the work files whenever
+		// there are mergeFanIn of them
+		long	files			= 0;
+		long	fileBytes	= 0;
+		long	remaining	= plan.records;
+
+		for (long run = 0; run < plan.runs; run++)
+		{
+			long runRecords = Math.min(plan.recordsPerRun, remaining);
+			remaining -= runRecords;
+
+			if (run >= plan.runs - lastInMemory
+					|| (keepRuns && memoryRunBudget > 0 && memoryBytes + runHeapBytes <= memoryRunBudget))
+			{
+				memoryBytes += runHeapBytes;
+				plan.memoryRuns++;
+				continue;
+			}
+
+			long runBytes = runRecords * plan.workFileRecordBytes;
+
+			files++;
+			fileBytes						+= runBytes;
+			plan.bytesSpilled		+= runBytes;
+			plan.peakTempBytes	= Math.max(plan.peakTempBytes, fileBytes);
+
+			if (files >= mergeFanIn && run < plan.runs - 1)
+			{
+				// the merge output exists alongside its inputs until the end
+				plan.peakTempBytes						= Math.max(plan.peakTempBytes, 2 * fileBytes);
+				plan.bytesSpilled							+= fileBytes;
+				plan.bytesReadFromWorkFiles	+= fileBytes;
+				plan.intermediateMerges++;
+				files = 1;
+			}
+		}
+
+		plan.bytesReadFromWorkFiles += fileBytes;
+
+		return plan;
+	}
+
+	/**
+	 * Predict the natural runs of sortin from the order of the sample, as
+	 * addRecord finds them in the first full buffer or, for a session,
+	 * addIfSorted finds a sortin file already in order.
+	 *
+	 * @return boolean - true if the sample is in natural runs and the plan has
+	 *         been completed for them
+	 */
+	private boolean explainNaturalRuns(SortPlan plan, List<T> sample, Comparator<T> comparator, boolean session)
+	{
+		if (session)
+		{
+			if (!sortedInputRuns || filter != null || projection != null)
+				return false;
+
+			for (int i = 1; i < sample.size(); i++)
+			{
+				if (comparator.compare(sample.get(i - 1), sample.get(i)) > 0)
+					return false;
+			}
+
+			// the file itself is the only run
+			plan.naturalRuns	= 1;
+			plan.runs					= 1;
+			return true;
+		}
+
+		if (naturalRunStreams == 0 || reducer != null)
+			return false;
+
+		NaturalRuns<T>	natural	= new NaturalRuns<T>(comparator, naturalRunStreams);
+		int							buffer	= (int) Math.min(sample.size(), plan.recordsPerRun);
+
+		for (int i = 0; i < buffer; i++)
+			natural.add(sample.get(i));
+
+		if (!natural.isStructured())
+			return false;
+
+		// the rest of the sample must extend the lanes
+		for (int i = buffer; i < sample.size(); i++)
+		{
+			if (natural.laneFor(sample.get(i)) < 0)
+				return false;
+		}
+
+		long lanes = natural.getLanes().size();
+		plan.naturalRuns	= lanes;
+		plan.runs					= lanes;
+
+		// a single lane is written straight to sortout
+		if (lanes == 1)
+			return true;
+
+		plan.bytesSpilled						= plan.records * plan.workFileRecordBytes;
+		plan.bytesReadFromWorkFiles	= plan.bytesSpilled;
+		plan.peakTempBytes					= plan.bytesSpilled;
+
+		return true;
+	}
+
+	/**
+	 * Set the thread pool used for parallel parsing. By default a pool is
+	 * created for each sort. The pool must not be the one running the sort
+	 * itself, or the sort may wait for threads it is occupying.
+	 *
+	 * @param executor - the thread pool, or null for a pool per sort
+	 */
+	public void setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * @return SortStats - the statistics of the running or last completed sort
+	 */
+	public SortStats getStats()
+	{
+		return stats;
+	}
+
+	/**
+	 * Add a listener to receive progress events from this sort.
+	 *
+	 * @param listener - the SortListener
+	 */
+	public void addSortListener(SortListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener - the SortListener to remove
+	 */
+	public void removeSortListener(SortListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Expose the statistics of this sort through JMX as
+	 * <code>com.pantgwyn.objectsort:type=Sort,name=&lt;name&gt;</code>.
+	 *
+	 * @param name - the name of the sort within JMX
+	 * @throws JMException
+	 */
+	public void registerMBean(String name) throws JMException
+	{
+		unregisterMBean();
+
+		ObjectName objectName = new ObjectName("com.pantgwyn.objectsort:type=Sort,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(stats, objectName);
+		mbeanName = objectName;
+	}
+
+	/**
+	 * Remove the statistics of this sort from JMX.
+	 *
+	 * @throws JMException
+	 */
+	public void unregisterMBean() throws JMException
+	{
+		if (mbeanName == null)
+			return;
+
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+		mbeanName = null;
+	}
+
+	/**
+	 * Add the duration of a period of work to the statistics and notify
+	 * listeners.
+	 *
+	 * @param phase      - the phase of the sort
+	 * @param startNanos - System.nanoTime at the start of the period
+	 */
+	protected void phaseCompleted(SortStats.Phase phase, long startNanos)
+	{
+		long nanos = System.nanoTime() - startNanos;
+		stats.addPhaseNanos(phase, nanos);
+
+		for (SortListener listener : listeners)
+			listener.phaseCompleted(phase, nanos, stats);
+	}
+
+	/**
+	 * Run the sort with a share of a MemoryGovernor budget in place of the
+	 * memory factor. Used by SortService.
+	 *
+	 * @param memoryQuota - the quota, or null to stop using one
+	 */
+	protected void setMemoryQuota(MemoryGovernor.Quota memoryQuota)
+	{
+		this.memoryQuota = memoryQuota;
+	}
+
+	/**
+	 * Create the FileWrapper for a sortin, sortout or work file of this sort.
+	 * Sort types needing more than the type to read a file override this.
+	 *
+	 * @param fileName - the fully qualified file name
+	 * @return FileWrapper - the new FileWrapper
+	 */
+	protected FileWrapper<T> newFileWrapper(String fileName)
+	{
+		return new FileWrapper<T>(getSortType(), fileName);
+	}
+
+	/**
+	 * Create the FileWrapper for a sortin file, with the codec of the file if
+	 * it is compressed.
+	 *
+	 * @param fileName - the fully qualified file name
+	 * @return FileWrapper - the new FileWrapper
+	 * @throws IOException
+	 */
+	protected FileWrapper<T> newSortIn(String fileName) throws IOException
+	{
+		FileWrapper<T> file = newFileWrapper(fileName);
+		file.setCodec(inputCodec(fileName));
+
+		return file;
+	}
+
+	/**
+	 * @param fileName - the fully qualified sortin file name
+	 * @return Codec - the codec of the sortin file by its extension or, if
+	 *         setDetectInputCodec is set, its first bytes - null if not
+	 *         compressed
+	 * @throws IOException
+	 */
+	protected Codec inputCodec(String fileName) throws IOException
+	{
+		return detectInputCodec ? Codecs.detect(fileName) : Codecs.forName(fileName);
+	}
+
+	/**
+	 * Create an input only FileWrapper over a byte range of a sortin file.
+	 *
+	 * @param fileName   - the fully qualified file name
+	 * @param rangeStart - the offset of the first byte to read
+	 * @param rangeEnd   - the offset after the last byte to read
+	 * @return FileWrapper - the new FileWrapper
+	 */
+	protected FileWrapper<T> newFileWrapper(String fileName, long rangeStart, long rangeEnd)
+	{
+		return new FileWrapper<T>(getSortType(), fileName, rangeStart, rangeEnd);
+	}
+
+	/**
+	 * @return boolean - true if the records are lines, so a file can be split
+	 *         at newlines and read in parallel
+	 */
+	private boolean isLineType()
+	{
+		FileWrapper.Type type = getSortType();
+
+		return type == FileWrapper.Type.TEXT || type == FileWrapper.Type.CSV || type == FileWrapper.Type.JSONL;
+	}
+
+	protected boolean createDir(
+															String tempDir)
+	{
+		boolean	created	= true;
+
+		File		dir			= new File(tempDir);
+
+		if (!dir.exists())
+
+			try
+			{
+				dir.mkdir();
+
+			} catch (SecurityException se)
+			{
+				created = false;
+			}
+		return created;
+	}
+
+	protected String getFileName(
+																String tempDir,
+																String fileName)
+	{
+		if (tempDir.endsWith("/"))
+			return tempDir + fileName;
+		return tempDir + "/" + fileName;
+	}
+
+	protected boolean thereIsInputData(
+																			List<FileWrapper<T>> workFileList)
+	{
+		for (FileWrapper<T> file : workFileList)
+		{
+			if (file.getCurrentInputItem() != null)
+				return true;
+		}
+
+		return false;
+	}
+
+	protected long getAvailableMemory()
+	{
+		long	allocated	= (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+		long	free			= Runtime.getRuntime().maxMemory() - allocated;
+
+		return free;
+
+	}
+
+	/**
+	 * Convience method for closing Closable items and ignoring exceptions
+	 * 
+	 * @param closeables
+	 */
+	public static void close(
+														Closeable... closeables)
+	{
+		for (Closeable closeable : closeables)
+		{
+			try
+			{
+				if (closeable != null)
+					closeable.close();
+			} catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+
+	protected boolean isListFull(
+																List<T> objQueue,
+																double freeSpaceTarget)
+	{
+
+		if (bufferLimit > 0) // memory budget in use
+			return bufferBytes >= bufferLimit && !objQueue.isEmpty();
+
+		if (queueLimit == 0) // not set yet
+		{
+			long freeNow = getAvailableMemory();
+
+			if (freeNow < freeSpaceTarget)
+			{
+				LOG.log(logLevel,
+								"stopped internal sort with :" + freeNow / 1024 / 1024 +
+										"mb - available memory");
+
+				queueLimit = objQueue.size();
+				if (queueLimit == 0)
+					queueLimit = 1000;
+				return true;
+			}
+
+			return false;
+		}
+
+		if (queueLimit <= objQueue.size())
+			return true;
+
+		return false;
+	}
+
+	/**
+	 * Estimate the heap used by a buffered record.
+	 * <p>
+	 * Only used when a memory budget is in force. The default serializes a
+	 * sample of the records and assumes the heap size is a multiple of the
+	 * serialized size. Subclasses override this for cheaper estimates. The
+	 * producer threads of a SortSession call this concurrently, so an override
+	 * must be thread safe.
+	 *
+	 * @param record - the record being buffered
+	 * @return long - the estimated size in bytes
+	 */
+	protected long estimateSize(T record)
+	{
+		// producer threads of a session estimate concurrently
+		if (estimates.getAndIncrement() % SIZE_SAMPLE_INTERVAL == 0 || sampledSize == 0)
+		{
+			long size = DEFAULT_OBJECT_SIZE;
+
+			try
+			{
+				ByteArrayOutputStream	bytes	= new ByteArrayOutputStream();
+				ObjectOutputStream		out		= new ObjectOutputStream(bytes);
+				out.writeUnshared(record);
+				out.close();
+				size = 2L * bytes.size();
+			} catch (IOException e)
+			{
+				// not serializable - keep the default
+			}
+
+			synchronized (estimates)
+			{
+				sampledBytes		+= size;
+				sampledRecords++;
+				sampledSize			= Math.max(1, sampledBytes / sampledRecords);
+			}
+		}
+
+		return sampledSize;
+	}
+
+	/**
+	 * Discard the sampled record sizes, at the start of a sort.
+	 */
+	private void resetSizeSample()
+	{
+		synchronized (estimates)
+		{
+			sampledBytes		= 0;
+			sampledRecords	= 0;
+			sampledSize			= 0;
+			estimates.set(0);
+		}
+	}
+
+	/**
+	 * @return long - the byte limit for the next in-memory run, or 0 when the
+	 *         memory factor governs the run size
+	 */
+	protected long getBufferLimit()
+	{
+		if (memoryQuota != null)
+			return Math.max(1, memoryQuota.refresh());
+
+		return memoryBudget;
+	}
+
+	protected boolean sort(
+													Comparator<T> comparator,
+													String tempDir)
+																					throws ClassNotFoundException,
+																					IOException
+	{
+		return sort(comparator, Collections.singletonList(tempDir));
+	}
+
+	protected boolean sort(
+													Comparator<T> comparator,
+													List<String> tempDirs)
+																					throws ClassNotFoundException,
+																					IOException
+	{
+		if (cache == null || sortIn.getFileName() == null || sortOut.getFileName() == null)
+			return sortInput(comparator, tempDirs);
+
+		String settings = cacheSettings();
+
+		if (settings == null)
+		{
+			LOG.log(Level.WARNING, "sortout " + sortOut.getFileName()
+					+ " not cached, as a filter, projection or reducer is set without an id");
+			return sortInput(comparator, tempDirs);
+		}
+
+		SortCache.Key key = cache.key(sortIn.getFileName(), settings + ":" + cacheId);
+
+		if (cache.fetch(key, sortOut.getFileName()))
+		{
+			stats.start();
+			stats.setInputBytes(new File(sortIn.getFileName()).length());
+			stats.setOutputBytes(new File(sortOut.getFileName()).length());
+			stats.stop();
+
+			LOG.log(logLevel, "sortout " + sortOut.getFileName() + " taken from cache entry " + key);
+
+			for (SortListener listener : listeners)
+				listener.sortCompleted(stats);
+
+			return true;
+		}
+
+		// a new file, so a cached output linked to the old one is not overwritten
+		Files.deleteIfExists(Paths.get(sortOut.getFileName()));
+
+		boolean sorted = sortInput(comparator, tempDirs);
+
+		if (sorted)
+			cache.store(key, sortOut.getFileName());
+
+		return sorted;
+	}
+
+	/**
+	 * The settings of this Sort that change its output, other than the
+	 * comparator, for the cache key. A subclass with settings of its own that
+	 * change the output adds them to these.
+	 *
+	 * @return String - the settings, or null if a filter, projection or reducer
+	 *         has no id, so the output cannot be cached
+	 */
+	protected String cacheSettings()
+	{
+		if ((filter != null && filterId == null) || (projection != null && projectionId == null)
+				|| (reducer != null && reducerId == null))
+			return null;
+
+		String codec = outputCodec == null ? "" : outputCodec.getExtension();
+
+		return getSortType() + ":" + codec + ":filter=" + (filter == null ? "" : filterId) + ":projection="
+				+ (projection == null ? "" : projectionId) + ":reducer=" + (reducer == null ? "" : reducerId);
+	}
+
+	private boolean sortInput(
+														Comparator<T> comparator,
+														List<String> tempDirs)
+																						throws ClassNotFoundException,
+																						IOException
+	{
+		if (parallelism > 1 && sortIn.getFileName() != null && isLineType())
+			return sortFiles(Collections.singletonList(sortIn.getFileName()), comparator, tempDirs);
+
+		if (!startRuns(comparator, tempDirs))
+			return false;
+
+		if (checkpoint && sortIn.getFileName() != null && sortOut.getFileName() != null)
+		{
+			checkpointName	= getFileName(tempDirs.get(0), workFilePrefix + CHECKPOINT_SUFFIX);
+			checkpointDirs	= tempDirs;
+		}
+
+		return completeSort(0, false);
+	}
+
+	/**
+	 * Read the input, skipping records already held in runs, and produce the
+	 * output.
+	 *
+	 * @param skipRecords   - the number of records at the start of the input to
+	 *                      skip
+	 * @param inputComplete - true if the runs hold all of the input
+	 * @return true - sort completed
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	private boolean completeSort(
+																long skipRecords,
+																boolean inputComplete)
+																												throws ClassNotFoundException,
+																												IOException
+	{
+		if (!inputComplete)
+			readInput(skipRecords);
+
+		return outputRuns();
+	}
+
+	/**
+	 * Write the output of a sort whose input has ended.
+	 *
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	protected boolean outputRuns() throws ClassNotFoundException,
+																	IOException
+	{
+		/*
+		 * if no work files write direct to the output file
+		 */
+
+		if (workFileList.isEmpty() && memoryRuns.isEmpty())
+		{
+			if (!outputComplete)
+				createOutput(objQueue, runComparator);
+		} else
+			mergePass(sortOut, takeRuns(), runComparator, SortStats.Phase.OUTPUT);
+
+		endSort();
+
+		return true;
+	}
+
+	/**
+	 * Read sortin into the runs of the sort, which must have been started, and
+	 * end the input.
+	 *
+	 * @param skipRecords - the number of records at the start of the input to
+	 *                    skip
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	protected void readInput(long skipRecords) throws ClassNotFoundException,
+																							IOException
+	{
+		sortIn.startInStream();
+
+		T readObj = sortIn.getCurrentInputItem();
+
+		for (long skipped = 0; skipped < skipRecords && readObj != null; skipped++)
+		{
+			sortIn.getNextInput();
+			readObj = sortIn.getCurrentInputItem();
+		}
+
+		while (readObj != null)
+		{
+			T record = ingest(readObj);
+
+			if (record != null)
+				addRecord(record);
+			else
+			{
+				recordsFiltered++;
+				stats.addRecordsFiltered(1);
+			}
+
+			sortIn.getNextInput();
+			readObj = sortIn.getCurrentInputItem();
+		}
+
+		sortIn.stopInStream();
+		stats.setInputBytes(sortIn.getBytesRead());
+
+		endRuns();
+	}
+
+	/**
+	 * Put a stream of timestamped records back in order, passing each record on
+	 * once it can no longer be overtaken. Unlike sort, records are output while
+	 * the input continues, so the input need never end. See ReorderBuffer.
+	 *
+	 * @param inCallback  - an implementor of the SortInCallback interface - may
+	 *                    block waiting for the next record
+	 * @param outCallback - an implementor of the SortOutCallback interface
+	 * @param comparator  - orders the records, by event time first
+	 * @param eventTime   - gives the event time of a record
+	 * @param maxLateness - how far, in event time, a record may arrive behind
+	 *                    the latest record seen and still be put in order
+	 * @param tempDir     - String of the fully qualified directory name for work
+	 *                    files (if required)
+	 * @return true - the input ended and every record has been output
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean reorder(
+													SortInCallback<T> inCallback,
+													SortOutCallback<T> outCallback,
+													Comparator<T> comparator,
+													ToLongFunction<? super T> eventTime,
+													long maxLateness,
+													String tempDir)
+																					throws ClassNotFoundException,
+																					IOException
+	{
+		ReorderBuffer<T> buffer = new ReorderBuffer<T>(this, comparator, eventTime, maxLateness, outCallback, tempDir);
+
+		for (T item = inCallback.produceSortIn(); item != null; item = inCallback.produceSortIn())
+		{
+			T record = ingest(item);
+
+			if (record != null)
+				buffer.add(record);
+			else
+				stats.addRecordsFiltered(1);
+		}
+
+		buffer.close();
+
+		return true;
+	}
+
+	/**
+	 * Sort a file and pass the records to a callback a key group at a time.
+	 *
+	 * @param <K>          class of the grouping key
+	 * @param sortInName   - String of the fully qualified sortin file name
+	 * @param keyExtractor - gives the key of a record
+	 * @param keyComparator - orders the keys
+	 * @param outCallback  - receives each key with an Iterator over its records
+	 * @param tempDir      - String of the fully qualified directory name for work
+	 *                     files (if required)
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public <K> boolean sortGroups(
+																String sortInName,
+																Function<T, K> keyExtractor,
+																Comparator<? super K> keyComparator,
+																GroupedSortOutCallback<K, T> outCallback,
+																String tempDir)
+																								throws ClassNotFoundException,
+																								IOException
+	{
+		return sortGroups(sortInName, keyExtractor, keyComparator, outCallback, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Sort a file and pass the records to a callback a key group at a time.
+	 * <p>
+	 * The groups are read from the final merge as the callback iterates, so a
+	 * group of any size is never held in memory. Records a callback does not
+	 * iterate over are skipped. With a reducer set each group holds one record.
+	 *
+	 * @param <K>           class of the grouping key
+	 * @param sortInName    - String of the fully qualified sortin file name
+	 * @param keyExtractor  - gives the key of a record
+	 * @param keyComparator - orders the keys
+	 * @param outCallback   - receives each key with an Iterator over its records
+	 * @param tempDirs      - List of the fully qualified directory names for work
+	 *                      files (if required)
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public <K> boolean sortGroups(
+																String sortInName,
+																Function<T, K> keyExtractor,
+																Comparator<? super K> keyComparator,
+																GroupedSortOutCallback<K, T> outCallback,
+																List<String> tempDirs)
+																												throws ClassNotFoundException,
+																												IOException
+	{
+		sortIn	= newSortIn(sortInName);
+		sortOut	= null;
+
+		Comparator<T> comparator = (a, b) -> keyComparator.compare(keyExtractor.apply(a), keyExtractor.apply(b));
+
+		if (!startRuns(comparator, tempDirs))
+			return false;
+
+		readInput(0);
+
+		long						outputStart	= System.nanoTime();
+		MergeCursor<T>	cursor			= openCursor();
+
+		try
+		{
+			GroupCursor<K, T> groups = new GroupCursor<K, T>(cursor, keyExtractor, keyComparator);
+
+			while (groups.nextGroup())
+				outCallback.consumeGroup(groups.getKey(), groups.getRecords());
+
+			stats.addRecordsWritten(groups.getRecordsRead());
+		} finally
+		{
+			cursor.close();
+		}
+
+		phaseCompleted(SortStats.Phase.OUTPUT, outputStart);
+		endSort();
+
+		outCallback.consumeGroup(null, null);
+
+		return true;
+	}
+
+	/**
+	 * Find the records at the given ranks of a file, as if it were sorted.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param comparator - The Comparator for Class T giving the order of ranks
+	 * @param tempDir    - String of the fully qualified directory name for work
+	 *                   files (if required)
+	 * @param ranks      - 0 based ranks, e.g. 0 for the lowest record
+	 * @return List - the record at each rank, null for a rank beyond the end
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public List<T> select(
+												String sortInName,
+												Comparator<T> comparator,
+												String tempDir,
+												long... ranks)
+																				throws ClassNotFoundException,
+																				IOException
+	{
+		return select(sortInName, comparator, Collections.singletonList(tempDir), ranks);
+	}
+
+	/**
+	 * Find the records at the given ranks of a file, as if it were sorted.
+	 * <p>
+	 * The file is read twice but only the records in a narrow band of values
+	 * around each rank, estimated from a sample, are sorted. The bands are
+	 * sorted within the memory budget of this Sort, spilling if they must.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param comparator - The Comparator for Class T giving the order of ranks
+	 * @param tempDirs   - List of the fully qualified directory names for work
+	 *                   files (if required)
+	 * @param ranks      - 0 based ranks, e.g. 0 for the lowest record
+	 * @return List - the record at each rank, null for a rank beyond the end
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public List<T> select(
+												String sortInName,
+												Comparator<T> comparator,
+												List<String> tempDirs,
+												long... ranks)
+																				throws ClassNotFoundException,
+																				IOException
+	{
+		Selection<T> selection = new Selection<T>(this, sortInName, comparator, tempDirs);
+
+		recordsRead = selection.countAndSample();
+
+		return selection.select(ranks);
+	}
+
+	/**
+	 * Find the records at the given quantiles of a file, as if it were sorted.
+	 *
+	 * @param sortInName - String of the fully qualified sortin file name
+	 * @param comparator - The Comparator for Class T giving the order of ranks
+	 * @param tempDir    - String of the fully qualified directory name for work
+	 *                   files (if required)
+	 * @param quantiles  - quantiles from 0 to 1, e.g. 0.5 for the median and
+	 *                   0.99 for p99
+	 * @return List - the record at each quantile, empty entries (null) if the
+	 *         file is empty
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public List<T> quantiles(
+														String sortInName,
+														Comparator<T> comparator,
+														String tempDir,
+														double... quantiles)
+																								throws ClassNotFoundException,
+																								IOException
+	{
+		Selection<T>	selection	= new Selection<T>(this, sortInName, comparator,
+																									Collections.singletonList(tempDir));
+		long					records		= selection.countAndSample();
+		long[]				ranks			= new long[quantiles.length];
+
+		for (int i = 0; i < quantiles.length; i++)
+			ranks[i] = Math.round(Math.max(0, Math.min(1, quantiles[i])) * (records - 1));
+
+		recordsRead = records;
+
+		return selection.select(ranks);
+	}
+
+	/**
+	 * Sort one or more input files by reading them on the parallelism threads.
+	 * Each thread feeds a shared SortSession, so sorts and spills its own runs.
+	 * TEXT and CSV files are split into byte ranges on record boundaries when
+	 * there are more threads than files to keep busy.
+	 *
+	 * @param inNames    - the fully qualified input file names
+	 * @param comparator - the Comparator for Class T
+	 * @param tempDirs   - the directories for work files
+	 * @return true - sort completed - false - sort failed.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	protected boolean sortFiles(
+															List<String> inNames,
+															Comparator<T> comparator,
+															List<String> tempDirs)
+																											throws IOException,
+																											ClassNotFoundException
+	{
+		SortSession<T> session;
+
+		try
+		{
+			session = new SortSession<T>(this, comparator, tempDirs);
+		} catch (IOException e)
+		{
+			return false;
+		}
+
+		ExecutorService pool = executor != null ? executor : Executors.newFixedThreadPool(parallelism);
+
+		try
+		{
+			long					inputBytes	= 0;
+			List<String>	unsorted		= inNames;
+
+			// a sorted file is merged as it is, so cannot be filtered
+			if (sortedInputRuns && filter == null && projection == null)
+			{
+				List<Future<Long>> checks = new ArrayList<Future<Long>>();
+
+				for (String inName : inNames)
+					checks.add(pool.submit(() -> addIfSorted(inName, session)));
+
+				unsorted = new ArrayList<String>();
+
+				for (int i = 0; i < inNames.size(); i++)
+				{
+					long bytes = await(checks.get(i), inNames.get(i));
+
+					if (bytes < 0)
+						unsorted.add(inNames.get(i));
+					else
+						inputBytes += bytes;
+				}
+
+				LOG.log(logLevel, (inNames.size() - unsorted.size()) + " of " + inNames.size() + " input files already sorted");
+			}
+
+			boolean	split		= isLineType();
+			int			chunks	= Math.max(1, parallelism * CHUNKS_PER_THREAD / Math.max(1, unsorted.size()));
+
+			List<String>				chunkNames	= new ArrayList<String>();
+			List<Future<Long>>	reads				= new ArrayList<Future<Long>>();
+
+			for (String inName : unsorted)
+			{
+				// a compressed file can only be read from the start
+				List<long[]> ranges = split && chunks > 1 && inputCodec(inName) == null
+						? InputChunks.split(inName, getSortType(), chunks, pool)
+						: null;
+
+				if (ranges == null)
+				{
+					chunkNames.add(inName);
+					reads.add(pool.submit(() -> readInto(newSortIn(inName), session)));
+					continue;
+				}
+
+				for (long[] range : ranges)
+				{
+					chunkNames.add(inName);
+					reads.add(pool.submit(() -> readInto(newFileWrapper(inName, range[0], range[1]),
+																								session)));
+				}
+			}
+
+			LOG.log(logLevel, "reading " + unsorted.size() + " input files as " + reads.size() + " chunks on " + parallelism
+					+ " threads");
+
+			for (int i = 0; i < reads.size(); i++)
+				inputBytes += await(reads.get(i), chunkNames.get(i));
+
+			stats.setInputBytes(inputBytes);
+
+		} finally
+		{
+			if (executor == null)
+				pool.shutdown();
+		}
+
+		return session.finish();
+	}
+
+	/**
+	 * Add the records of an input file or byte range to a session.
+	 *
+	 * @return long - the bytes read
+	 */
+	private long readInto(FileWrapper<T> input, SortSession<T> session) throws IOException,
+																																					ClassNotFoundException
+	{
+		input.startInStream();
+
+		for (T item = input.getCurrentInputItem(); item != null; item = input.getCurrentInputItem())
+		{
+			T record = ingest(item);
+
+			if (record != null)
+				session.add(record);
+			else
+				stats.addRecordsFiltered(1);
+
+			input.getNextInput();
+		}
+
+		input.stopInStream();
+		return input.getBytesRead();
+	}
+
+	/**
+	 * Add an input file to a session as a merge run if it is already in order.
+	 *
+	 * @return long - the bytes read, or -1 if the file is not in order
+	 */
+	private long addIfSorted(String inName, SortSession<T> session) throws IOException,
+																																				ClassNotFoundException
+	{
+		FileWrapper<T> input = newSortIn(inName);
+		input.startInStream();
+
+		long	records		= 0;
+		T			previous	= null;
+
+		for (T item = input.getCurrentInputItem(); item != null; item = input.getCurrentInputItem())
+		{
+			if (previous != null && runComparator.compare(previous, item) > 0)
+			{
+				input.stopInStream();
+				return -1;
+			}
+
+			previous = item;
+			records++;
+			input.getNextInput();
+		}
+
+		input.stopInStream();
+
+		if (records > 0)
+		{
+			FileWrapper<T> run = newSortIn(inName);
+			run.setKeepFile(true);
+
+			session.addRecordsAdded(records);
+			session.addRun(run);
+		}
+
+		return input.getBytesRead();
+	}
+
+	static <V> V await(Future<V> read, String inName) throws IOException,
+																										ClassNotFoundException
+	{
+		try
+		{
+			return read.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted reading " + inName, e);
+		} catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof ClassNotFoundException)
+				throw (ClassNotFoundException) e.getCause();
+			throw new IOException("error reading " + inName, e.getCause());
+		}
+	}
+
+	/**
+	 * Prepare to receive the records of a new sort.
+	 *
+	 * @param comparator - the Comparator for Class T
+	 * @param tempDirs   - the directories for work files
+	 * @return true - ready - false - no temporary directory is usable
+	 */
+	protected boolean startRuns(
+															Comparator<T> comparator,
+															List<String> tempDirs)
+	{
+		workFileList.clear();
+		memoryRuns.clear();
+		memoryRunBytes = 0;
+
+		if (outputCodec != null && sortOut != null)
+			sortOut.setCodec(outputCodec);
+
+		stats.start();
+		runComparator = stats.countComparisons(comparator);
+
+		freeSpaceTarget = 0;
+
+		if (getBufferLimit() > 0)
+		{
+			LOG.log(logLevel, "memory budget at start:" + getBufferLimit() / 1024 / 1024 + "mb");
+		} else
+		{
+			System.gc();
+
+			long availableMemoryAtStart = getAvailableMemory();
+			freeSpaceTarget = availableMemoryAtStart * (1 - memoryFactor);
+
+			LOG.log(logLevel,
+							"available memory at start:" + availableMemoryAtStart / 1024 / 1024 +
+									"mb - setting target available memory to:" + freeSpaceTarget / 1024 / 1024 + "mb");
+		}
+
+		queueLimit			= 0;
+		workFileId			= 0;
+
+		recordsRead			= 0;
+		recordsFiltered	= 0;
+		outputComplete	= false;
+		resetSizeSample();
+		naturalRunFiles	= null;
+		checkpointName	= null;
+		retainedRuns		= new ArrayList<FileWrapper<T>>();
+
+		List<String> usableDirs = new ArrayList<String>();
+		for (String tempDir : tempDirs)
+		{
+			if (createDir(tempDir))
+				usableDirs.add(tempDir);
+			else
+				LOG.log(Level.WARNING, "cannot accss temp directory " + tempDir);
+		}
+
+		if (usableDirs.isEmpty())
+		{
+			stats.stop();
+			return false;
+		}
+
+		workDirs = new WorkDirectories(usableDirs, placement);
+
+		naturalRuns = null;
+		if (naturalRunStreams > 0 && reducer == null)
+			naturalRuns = new NaturalRuns<T>(runComparator, naturalRunStreams);
+
+		startBuffer();
+
+		return true;
+	}
+
+	/**
+	 * Start a new in-memory run.
+	 */
+	protected void startBuffer()
+	{
+		objQueue		= new ArrayList<T>();
+		bufferBytes	= 0;
+		bufferLimit	= getBufferLimit();
+
+		if (naturalRuns != null)
+			naturalRuns.reset();
+
+		phaseStart = System.nanoTime();
+	}
+
+	/**
+	 * Add the next input record to the sort.
+	 * <p>
+	 * The record is buffered in memory, spilling the buffer to a work file first
+	 * if it is full.
+	 *
+	 * @param record - the next input record
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	protected void addRecord(T record) throws IOException,
+																	ClassNotFoundException
+	{
+		if (naturalRunFiles != null)
+		{
+			int lane = naturalRuns.laneFor(record);
+
+			if (lane >= 0)
+			{
+				naturalRunFiles.get(lane).write(record);
+				naturalRunRecords++;
+				recordsRead++;
+				return;
+			}
+
+			closeNaturalRuns(false);
+			checkWorkFileLimit();
+			saveCheckpoint(false);
+			startBuffer();
+		}
+
+		if (!objQueue.isEmpty() && isListFull(objQueue, freeSpaceTarget))
+		{
+			bufferCompleted();
+
+			if (naturalRuns != null && naturalRuns.isStructured())
+			{
+				openNaturalRuns();
+				addRecord(record);
+				return;
+			}
+
+			if (!keepRun(objQueue, runBytes(objQueue), false))
+			{
+				createWorkFile(objQueue, workFileList, runComparator);
+				checkWorkFileLimit();
+				saveCheckpoint(false);
+			}
+			startBuffer();
+		}
+
+		objQueue.add(record);
+		if (bufferLimit > 0)
+			bufferBytes += estimateSize(record);
+		if (naturalRuns != null)
+			naturalRuns.add(record);
+
+		recordsRead++;
+	}
+
+	/**
+	 * Called at the end of the input. The last buffer is kept in memory as a run
+	 * if there are other runs, otherwise it is left in memory for the output.
+	 *
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	protected void endRuns() throws IOException,
+													ClassNotFoundException
+	{
+		if (naturalRunFiles != null)
+			closeNaturalRuns(true);
+		else
+		{
+			bufferCompleted();
+
+			if ((!workFileList.isEmpty() || !memoryRuns.isEmpty()) && !objQueue.isEmpty()
+					&& !keepRun(objQueue, 0, true))
+				createWorkFile(objQueue, workFileList, runComparator);
+		}
+
+		if (!workFileList.isEmpty())
+		{
+			saveCheckpoint(true);
+
+			LOG.log(logLevel, "added to files:");
+
+			for (FileWrapper<T> workFile : workFileList)
+			{
+				LOG.log(logLevel, workFile.getFileName());
+			}
+		}
+	}
+
+	/**
+	 * Complete the statistics of the sort and notify listeners.
+	 */
+	protected void endSort()
+	{
+		if (sortOut != null)
+			stats.setOutputBytes(sortOut.getBytesWritten());
+		stats.stop();
+
+		if (checkpointName != null)
+		{
+			new File(checkpointName).delete();
+			checkpointName = null;
+			releaseRuns();
+		}
+
+		for (SortListener listener : listeners)
+			listener.sortCompleted(stats);
+	}
+
+	/**
+	 * Open a session that many threads may add records to concurrently.
+	 *
+	 * @param sortOutName - String of the fully qualified sortout file name
+	 * @param comparator  - The Comparator for Class T that will be called to
+	 *                    perform the sort.
+	 * @param tempDir     - String of the fully qualified directory name for work
+	 *                    files (if required)
+	 * @return SortSession - the open session
+	 * @throws IOException
+	 */
+	public SortSession<T> openSession(
+																		String sortOutName,
+																		Comparator<T> comparator,
+																		String tempDir)
+																										throws IOException
+	{
+		return openSession(sortOutName, comparator, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Open a session that many threads may add records to concurrently.
+	 *
+	 * @param sortOutName - String of the fully qualified sortout file name
+	 * @param comparator  - The Comparator for Class T that will be called to
+	 *                    perform the sort.
+	 * @param tempDirs    - List of the fully qualified directory names for work
+	 *                    files (if required)
+	 * @return SortSession - the open session
+	 * @throws IOException
+	 */
+	public SortSession<T> openSession(
+																		String sortOutName,
+																		Comparator<T> comparator,
+																		List<String> tempDirs)
+																												throws IOException
+	{
+		sortIn	= null;
+		sortOut	= newFileWrapper(sortOutName);
+
+		return new SortSession<T>(this, comparator, tempDirs);
+	}
+
+	/**
+	 * Open a session that many threads may add records to concurrently, passing
+	 * the results to a SortOutCallback.
+	 *
+	 * @param outCallback - an implementor of the SortOutCallback interface
+	 * @param comparator  - The Comparator for Class T that will be called to
+	 *                    perform the sort.
+	 * @param tempDir     - String of the fully qualified directory name for work
+	 *                    files (if required)
+	 * @return SortSession - the open session
+	 * @throws IOException
+	 */
+	public SortSession<T> openSession(
+																		SortOutCallback<T> outCallback,
+																		Comparator<T> comparator,
+																		String tempDir)
+																										throws IOException
+	{
+		return openSession(outCallback, comparator, Collections.singletonList(tempDir));
 	}
 
 	/**
-	 * Perform an object sort of Objects of class T.
-	 * <p>
-	 * This executes a sort obtaining input objects from a SortInCallback and passes
+	 * Open a session that many threads may add records to concurrently, passing
 	 * the results to a SortOutCallback.
 	 *
-	 * @param inCallback  - an implementor of the SortInCallback interface
 	 * @param outCallback - an implementor of the SortOutCallback interface
 	 * @param comparator  - The Comparator for Class T that will be called to
 	 *                    perform the sort.
-	 * @param tempDir     - - String of the fully qualified directory name for work
+	 * @param tempDirs    - List of the fully qualified directory names for work
 	 *                    files (if required)
-	 * @return true - sort completed - false - sort failed.
-	 * @throws ClassNotFoundException
+	 * @return SortSession - the open session
 	 * @throws IOException
 	 */
-	public boolean sort(
-											SortInCallback<T> inCallback,
-											SortOutCallback<T> outCallback,
-											Comparator<T> comparator,
-											String tempDir)
-																			throws ClassNotFoundException,
-																			IOException
+	public SortSession<T> openSession(
+																		SortOutCallback<T> outCallback,
+																		Comparator<T> comparator,
+																		List<String> tempDirs)
+																												throws IOException
 	{
-		sortIn	= new FileWrapper<T>(getSortType(), inCallback);
+		sortIn	= null;
 		sortOut	= new FileWrapper<T>(getSortType(), outCallback);
 
-		return sort(comparator, tempDir);
+		return new SortSession<T>(this, comparator, tempDirs);
 	}
 
 	/**
-	 * Perform an object sort of Objects of class T.
+	 * Open a cursor over the sorted records once the input has ended.
 	 * <p>
-	 * This executes a sort obtaining input objects from a SortInCallback and writes
-	 * the result to the sortOut file name.
+	 * The cursor merges the work files and the runs kept in memory, or reads the
+	 * last buffer if the sort completed in memory. Closing the cursor deletes the work files.
 	 *
-	 * @param inCallback   - an implementor of the SortInCallback interface
-	 * @param sortOutName- String of the fully qualified sortout file name
-	 * @param comparator   - The Comparator for Class T that will be called to
-	 *                     perform the sort.
-	 * @param tempDir      - - String of the fully qualified directory name for work
-	 *                     files (if required)
-	 * @return true - sort completed - false - sort failed.
-	 * @throws ClassNotFoundException
+	 * @return MergeCursor - the sorted records
 	 * @throws IOException
+	 * @throws ClassNotFoundException
 	 */
-	public boolean sort(
-											SortInCallback<T> inCallback,
-											String sortOutName,
-											Comparator<T> comparator,
-											String tempDir)
-																			throws ClassNotFoundException,
-																			IOException
+	protected MergeCursor<T> openCursor() throws IOException,
+																		ClassNotFoundException
 	{
-		sortIn	= new FileWrapper<T>(getSortType(), inCallback);
-		sortOut	= new FileWrapper<T>(getSortType(), sortOutName);
-		return sort(comparator, tempDir);
+		List<FileWrapper<T>> inputs = takeRuns();
+
+		if (inputs.isEmpty())
+		{
+			long phaseStart = System.nanoTime();
+			objQueue.sort(runComparator);
+			reduceRun(objQueue, runComparator);
+			phaseCompleted(SortStats.Phase.RUN_SORT, phaseStart);
+
+			inputs.add(new FileWrapper<T>(getSortType(), objQueue));
+		}
+
+		return new MergeCursor<T>(inputs, runComparator, reducer);
 	}
 
-	protected boolean createDir(
-															String tempDir)
+	/**
+	 * Sort a full buffer and keep it in memory as a run, if checkpoints are not
+	 * being recorded and it fits in what is left of the memory run budget.
+	 *
+	 * @param run   - the full buffer, which becomes the run if kept
+	 * @param bytes - the estimated bytes of the buffer
+	 * @param last  - true for the last buffer of the input, which is kept
+	 *              whatever the budget
+	 * @return boolean - true if the run was kept in memory
+	 */
+	protected boolean keepRun(List<T> run, long bytes, boolean last)
 	{
-		boolean	created	= true;
-
-		File		dir			= new File(tempDir);
+		if (!reserveMemoryRun(bytes, last))
+			return false;
 
-		if (!dir.exists())
+		long phaseStart = System.nanoTime();
+		run.sort(runComparator);
+		reduceRun(run, runComparator);
+		phaseCompleted(SortStats.Phase.RUN_SORT, phaseStart);
 
-			try
-			{
-				dir.mkdir();
+		addMemoryRun(run);
 
-			} catch (SecurityException se)
-			{
-				created = false;
-			}
-		return created;
+		return true;
 	}
 
-	protected String getFileName(
-																String tempDir,
-																String fileName)
+	/**
+	 * Reserve room for a run in what is left of the memory run budget. Nothing is
+	 * kept in memory while checkpoints are being recorded.
+	 *
+	 * @param bytes - the estimated bytes of the run
+	 * @param last  - true for the last buffer of the input, which is kept
+	 *              whatever the budget
+	 * @return boolean - true if the run may be kept in memory
+	 */
+	protected boolean reserveMemoryRun(long bytes, boolean last)
 	{
-		if (tempDir.endsWith("/"))
-			return tempDir + fileName;
-		return tempDir + "/" + fileName;
+		if (checkpointName != null)
+			return false;
+
+		synchronized (memoryRuns)
+		{
+			// a run of unknown size could exceed the budget
+			if (!last && (memoryRunBudget == 0 || bytes <= 0 || memoryRunBytes + bytes > memoryRunBudget))
+				return false;
+
+			memoryRunBytes += bytes;
+		}
+
+		return true;
 	}
 
-	protected boolean thereIsInputData(
-																			List<FileWrapper<T>> workFileList)
+	/**
+	 * Add a sorted run, for which room has been reserved, to the runs kept in
+	 * memory.
+	 *
+	 * @param run - the sorted run
+	 */
+	protected void addMemoryRun(List<T> run)
 	{
-		for (FileWrapper<T> file : workFileList)
+		synchronized (memoryRuns)
 		{
-			if (file.getCurrentInputItem() != null)
-				return true;
+			memoryRuns.add(new FileWrapper<T>(getSortType(), run));
 		}
 
-		return false;
+		stats.runKeptInMemory();
+		LOG.log(logLevel, "kept run of " + run.size() + " records in memory");
 	}
 
-	protected long getAvailableMemory()
+	/**
+	 * @return long - the estimated bytes of a full buffer, 0 if no memory run
+	 *         budget is set
+	 */
+	private long runBytes(List<T> run)
 	{
-		long	allocated	= (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
-		long	free			= Runtime.getRuntime().maxMemory() - allocated;
+		if (memoryRunBudget == 0)
+			return 0;
 
-		return free;
+		if (bufferLimit > 0)
+			return bufferBytes;
+
+		long bytes = 0;
 
+		for (T record : run)
+			bytes += estimateSize(record);
+
+		return bytes;
 	}
 
 	/**
-	 * Convience method for closing Closable items and ignoring exceptions
-	 * 
-	 * @param closeables
+	 * @return List - the work files and the runs kept in memory, which are
+	 *         handed over to the caller
 	 */
-	public static void close(
-														Closeable... closeables)
+	protected List<FileWrapper<T>> takeRuns()
 	{
-		for (Closeable closeable : closeables)
+		List<FileWrapper<T>> runs = new ArrayList<FileWrapper<T>>(workFileList);
+		workFileList.clear();
+
+		synchronized (memoryRuns)
 		{
-			try
-			{
-				if (closeable != null)
-					closeable.close();
-			} catch (IOException e)
-			{
-				// ignore
-			}
+			runs.addAll(memoryRuns);
+			memoryRuns.clear();
+			memoryRunBytes = 0;
 		}
+
+		return runs;
 	}
 
-	protected boolean isListFull(
-																List<T> objQueue,
-																double freeSpaceTarget)
+	private void bufferCompleted()
 	{
+		stats.addRecordsRead(objQueue.size());
+		stats.bufferFilled(objQueue.size(), bufferBytes);
+		phaseCompleted(SortStats.Phase.INGEST, phaseStart);
+	}
 
-		if (queueLimit == 0) // not set yet
+	protected void checkWorkFileLimit() throws IOException,
+																			ClassNotFoundException
+	{
+		if (workFileList.size() >= mergeFanIn)
 		{
-			long freeNow = getAvailableMemory();
-
-			if (freeNow < freeSpaceTarget)
-			{
-				LOG.log(logLevel,
-								"stopped internal sort with :" + freeNow / 1024 / 1024 +
-										"mb - available memory");
-
-				queueLimit = objQueue.size();
-				if (queueLimit == 0)
-					queueLimit = 1000;
-				return true;
-			}
+			FileWrapper<T> mergeTarget = getMergeTarget(workFileList);
+			mergePass(mergeTarget, workFileList, runComparator, SortStats.Phase.MERGE);
+			workFileList.add(mergeTarget);
 
-			return false;
+			saveCheckpoint(false);
+			releaseRuns();
 		}
-
-		if (queueLimit <= objQueue.size())
-			return true;
-
-		return false;
 	}
 
-	protected boolean sort(
-													Comparator<T> comparator,
-													String tempDir)
-																					throws ClassNotFoundException,
-																					IOException
+	/**
+	 * Write the checkpoint file, if checkpoints are being recorded. The file is
+	 * written under a temporary name and renamed so that a checkpoint is never
+	 * left half written.
+	 *
+	 * @param inputComplete - true if the runs hold all of the input
+	 * @throws IOException
+	 */
+	protected void saveCheckpoint(boolean inputComplete) throws IOException
 	{
+		if (checkpointName == null)
+			return;
+
+		File				inFile			= new File(sortIn.getFileName());
+		Properties	properties	= new Properties();
+
+		properties.setProperty("type", getSortType().name());
+		properties.setProperty("sortIn", sortIn.getFileName());
+		properties.setProperty("sortInLength", Long.toString(inFile.length()));
+		properties.setProperty("sortInModified", Long.toString(inFile.lastModified()));
+		properties.setProperty("sortOut", sortOut.getFileName());
+		properties.setProperty("recordsConsumed", Long.toString(recordsRead + recordsFiltered));
+		if (sortIn.getInputOffset() >= 0)
+			properties.setProperty("sortInOffset", Long.toString(sortIn.getInputOffset()));
+		properties.setProperty("recordsFiltered", Long.toString(recordsFiltered));
+		properties.setProperty("inputComplete", Boolean.toString(inputComplete));
+		properties.setProperty("workFileId", Integer.toString(workFileId));
+
+		for (int i = 0; i < checkpointDirs.size(); i++)
+			properties.setProperty("tempDir." + i, checkpointDirs.get(i));
+
+		for (int i = 0; i < workFileList.size(); i++)
+			properties.setProperty("run." + i, workFileList.get(i).getFileName());
+
+		Path	target	= Paths.get(checkpointName);
+		Path	temp		= Paths.get(checkpointName + ".tmp");
+
+		try (OutputStream out = Files.newOutputStream(temp))
+		{
+			properties.store(out, "ObjectSort checkpoint");
+		}
 
-		List<T> objQueue;
-		workFileList.clear();
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
 
-		System.gc();
+	/**
+	 * Delete the merge inputs kept until the checkpoint no longer refers to them.
+	 */
+	private void releaseRuns()
+	{
+		for (FileWrapper<T> run : retainedRuns)
+		{
+			run.setKeepFile(false);
+			run.deleteFile();
+		}
 
-		boolean	sortOk									= true;
-		long		availableMemoryAtStart	= getAvailableMemory();
-		double	target									= availableMemoryAtStart * (1 - memoryFactor);
+		retainedRuns.clear();
+	}
 
-		LOG.log(logLevel,
-						"available memory at start:" + availableMemoryAtStart / 1024 / 1024 +
-								"mb - setting target available memory to:" + target / 1024 / 1024 + "mb");
+	/**
+	 * Write the ordered lanes of a full buffer as runs that following records
+	 * extend for as long as the input keeps to them.
+	 * <p>
+	 * A single lane with no earlier runs is written straight to a sortOut file.
+	 * If the input then turns out not to be sorted throughout, the partial
+	 * output is moved to the temporary directory to become the first run.
+	 *
+	 * @throws IOException
+	 */
+	protected void openNaturalRuns() throws IOException
+	{
+		List<List<T>> lanes = naturalRuns.getLanes();
 
-		queueLimit	= 0;
-		workFileId	= 0;
+		naturalRunDirect	= lanes.size() == 1 && workFileList.isEmpty() && memoryRuns.isEmpty()
+				&& sortOut != null && sortOut.getFileName() != null;
+		naturalRunFiles		= new ArrayList<FileWrapper<T>>();
+		naturalRunRecords	= 0;
+		phaseStart				= System.nanoTime();
 
-		recordsRead	= 0;
+		LOG.log(logLevel, "writing " + lanes.size() + " natural runs" + (naturalRunDirect ? " direct to output" : ""));
 
-		if (!createDir(tempDir))
+		for (List<T> lane : lanes)
 		{
-			LOG.log(Level.WARNING, "cannot accss temp directory " + tempDir);
-			return false;
+			FileWrapper<T> runFile = naturalRunDirect ? sortOut : getNextWorkFile(workDirs.nextDir());
+			runFile.startOutStream();
+			runFile.pushData(lane);
+			naturalRunFiles.add(runFile);
 		}
 
-		sortIn.startInStream();
+		objQueue.clear();
+	}
 
-		T readObj = null;
-		readObj = sortIn.getCurrentInputItem();
+	/**
+	 * Close the natural runs once a record does not extend them, or at the end
+	 * of the input, and add them to the work files.
+	 *
+	 * @param endOfData - true if the input has ended
+	 * @throws IOException
+	 */
+	protected void closeNaturalRuns(boolean endOfData) throws IOException
+	{
+		List<FileWrapper<T>> runFiles = naturalRunFiles;
+		naturalRunFiles = null;
 
-		while (readObj != null)
-		{
+		stats.addRecordsRead(naturalRunRecords);
 
-			objQueue = new LinkedList<T>();
+		for (FileWrapper<T> runFile : runFiles)
+			runFile.stopOutStream();
 
-			while (!isListFull(objQueue, target))
+		if (naturalRunDirect)
+		{
+			if (endOfData)
 			{
-
-				if (readObj == null)
-					break; // end of file
-
-				objQueue.add(readObj);
-
-				recordsRead++;
-				sortIn.getNextInput();
-				readObj = sortIn.getCurrentInputItem();
+				// the whole input was in order
+				outputComplete = true;
+				stats.addRecordsWritten(sortOut.getRecordsWritten());
+				phaseCompleted(SortStats.Phase.OUTPUT, phaseStart);
+				return;
 			}
 
-			if (readObj != null)
-			{
-				createWorkFile(objQueue, workFileList, tempDir, comparator);
-				if (workFileList.size() >= MAX_WORK_FILES)
-				{
-					FileWrapper<T> mergeTarget = getNextWorkFile(tempDir);
-					merge(mergeTarget, workFileList, comparator);
-					workFileList.add(mergeTarget);
-				}
-			} else
-			{
-				/*
-				 * reached end of data - if no work files write direct to the output file
-				 */
+			FileWrapper<T> runFile = getNextWorkFile(workDirs.nextDir());
+			runFile.setCodec(sortOut.getCodec() != null ? sortOut.getCodec() : Codecs.forName(sortOut.getFileName()));
+			runFile.setRecordCodec(null);
+			Files.move(Paths.get(sortOut.getFileName()), Paths.get(runFile.getFileName()),
+									StandardCopyOption.REPLACE_EXISTING);
+			runFiles.set(0, runFile);
+		}
 
-				if (workFileList.isEmpty())
-					createOutput(objQueue, comparator);
-				else
-					createWorkFile(objQueue, workFileList, tempDir, comparator);
+		for (FileWrapper<T> runFile : runFiles)
+		{
+			long	records	= naturalRunDirect ? sortOut.getRecordsWritten() : runFile.getRecordsWritten();
+			long	bytes		= naturalRunDirect ? sortOut.getBytesWritten() : runFile.getBytesWritten();
 
-			}
+			workFileList.add(runFile);
+			stats.runCreated();
+			stats.addBytesSpilled(bytes);
 
+			for (SortListener listener : listeners)
+				listener.runSpilled(runFile.getFileName(), records, bytes);
 		}
 
-		sortIn.stopInStream();
+		phaseCompleted(SortStats.Phase.SPILL, phaseStart);
+	}
 
-		if (!workFileList.isEmpty())
-		{
-			LOG.log(logLevel, "added to files:");
+	/**
+	 * Merge a set of work files, recording the pass in the statistics.
+	 *
+	 * @param mergeOut      - the output of the merge
+	 * @param mergeFileList - the work files to merge, cleared by the merge
+	 * @param comparator    - the Comparator for Class T
+	 * @param phase         - MERGE for an intermediate merge, OUTPUT for the final
+	 *                      merge
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	protected void mergePass(	FileWrapper<T> mergeOut,
+														List<FileWrapper<T>> mergeFileList,
+														Comparator<T> comparator,
+														SortStats.Phase phase)
+																										throws IOException,
+																										ClassNotFoundException
+	{
+		List<FileWrapper<T>>	inputs			= new ArrayList<FileWrapper<T>>(mergeFileList);
+		long									passStart	= System.nanoTime();
 
-			for (FileWrapper<T> workFile : workFileList)
+		if (checkpointName != null)
+		{
+			// the checkpoint still refers to the inputs until it is rewritten
+			for (FileWrapper<T> input : inputs)
 			{
-				LOG.log(logLevel, workFile.getFileName());
+				if (!input.isKeepFile())
+				{
+					input.setKeepFile(true);
+					retainedRuns.add(input);
+				}
 			}
 		}
 
-		if (!workFileList.isEmpty())
-			merge(sortOut, workFileList, comparator);
+		merge(mergeOut, mergeFileList, comparator);
+
+		for (FileWrapper<T> input : inputs)
+			stats.addBytesReadFromWorkFiles(input.getBytesRead());
+
+		if (phase == SortStats.Phase.MERGE)
+			stats.addBytesSpilled(mergeOut.getBytesWritten());
+		else
+			stats.addRecordsWritten(mergeOut.getRecordsWritten());
+
+		phaseCompleted(phase, passStart);
 
-		return sortOk;
+		long	nanos	= System.nanoTime() - passStart;
+		int		pass	= stats.mergePassCompleted(inputs.size(), nanos);
+
+		for (SortListener listener : listeners)
+			listener.mergePassCompleted(pass, inputs.size(), nanos);
 	}
 
 	protected void merge(	FileWrapper<T> mergeOut,
@@ -426,61 +3017,37 @@ public abstract class Sort<T>
 																											ClassNotFoundException
 	{
 
-		Comparator<FileWrapper<T>>	workFileCompare	= new Comparator<FileWrapper<T>>()
-																								{
-																									@Override
-																									public int compare(	FileWrapper<T> arg0,
-																																			FileWrapper<T> arg1)
-																									{
-																										
-																										T	item0	= arg0.getCurrentInputItem();
-																										T	item1	= arg1.getCurrentInputItem();
+		mergeOut.startOutStream();
 
-																										return itemComparator.compare(item0, item1);
-																									}
-																								};
+		// each record is encoded before the next is read, so its instance can be reused
+		boolean reuse = recordReuse && reducer == null && mergeOut.isFileOutput();
+		for (FileWrapper<T> mergeFile : mergeFileList)
+			mergeFile.setReuse(reuse);
 
-		Queue<FileWrapper<T>>				fileQueue				= new PriorityQueue<FileWrapper<T>>(
-																																										mergeFileList.size(),
-																																											workFileCompare);
+		MergeCursor<T> cursor = new MergeCursor<T>(mergeFileList, itemComparator);
 
-		mergeOut.startOutStream();
+		T pending = null;
 
-		for (FileWrapper<T> inFile : mergeFileList)
+		for (T item = cursor.next(); item != null; item = cursor.next())
 		{
-			inFile.startInStream();
-			if (inFile.getCurrentInputItem() != null)
-				fileQueue.add(inFile);
+			if (reducer == null)
+				mergeOut.write(item);
+			else if (pending != null && itemComparator.compare(pending, item) == 0)
+				pending = reducer.apply(pending, item);
+			else
+			{
+				if (pending != null)
+					mergeOut.write(pending);
+				pending = item;
+			}
 		}
 
-		while (!fileQueue.isEmpty())
-		{
-
-			FileWrapper<T> lowestFile = fileQueue.remove();
-
-			mergeOut.write(lowestFile.getCurrentInputItem());
-
-			lowestFile.getNextInput();
-			if (lowestFile.getCurrentInputItem() != null)
-				fileQueue.add(lowestFile);
-
-		}
+		if (pending != null)
+			mergeOut.write(pending);
 
 		mergeOut.stopOutStream();
 
-		mergeFileList.parallelStream().forEachOrdered(t -> {
-
-			try
-			{
-				t.stopInStream();
-			} catch (IOException e)
-			{
-				e.printStackTrace();
-				throw new RuntimeException("IO error stopping streams on merge");
-			}
-			t.deleteFile();
-
-		});
+		cursor.close();
 
 		mergeFileList.clear();
 
@@ -491,12 +3058,46 @@ public abstract class Sort<T>
 															Comparator<T> comparator)
 																												throws IOException
 	{
+		long phaseStart = System.nanoTime();
+		objQueue.sort(comparator);
+		reduceRun(objQueue, comparator);
+		phaseCompleted(SortStats.Phase.RUN_SORT, phaseStart);
+
+		phaseStart = System.nanoTime();
 		sortOut.startOutStream();
 
-		sortOut.pushData(objQueue, comparator);
+		sortOut.pushData(objQueue);
 
 		sortOut.stopOutStream();
+		stats.addRecordsWritten(sortOut.getRecordsWritten());
+		phaseCompleted(SortStats.Phase.OUTPUT, phaseStart);
+
+	}
+
+	/**
+	 * Combine adjacent equal records of a sorted run, if a reducer is set.
+	 *
+	 * @param run        - the sorted run, compacted in place
+	 * @param comparator - the Comparator for Class T
+	 */
+	protected void reduceRun(List<T> run, Comparator<T> comparator)
+	{
+		if (reducer == null || run.isEmpty())
+			return;
+
+		int kept = 0;
+
+		for (int i = 1; i < run.size(); i++)
+		{
+			T item = run.get(i);
+
+			if (comparator.compare(run.get(kept), item) == 0)
+				run.set(kept, reducer.apply(run.get(kept), item));
+			else
+				run.set(++kept, item);
+		}
 
+		run.subList(kept + 1, run.size()).clear();
 	}
 
 	public int getWorkFileCount()
@@ -511,26 +3112,68 @@ public abstract class Sort<T>
 
 	protected void createWorkFile(List<T> objQueue,
 																List<FileWrapper<T>> workFileList,
-																String tempDir,
 																Comparator<T> comparator) throws IOException
 	{
 
-		FileWrapper<T> workFile = getNextWorkFile(tempDir);
+		long phaseStart = System.nanoTime();
+		objQueue.sort(comparator);
+		reduceRun(objQueue, comparator);
+		phaseCompleted(SortStats.Phase.RUN_SORT, phaseStart);
+
+		phaseStart = System.nanoTime();
+		long						records		= objQueue.size();
+		FileWrapper<T>	workFile	= getNextWorkFile(workDirs.nextDir());
 		workFileList.add(workFile);
 		workFile.startOutStream();
-		workFile.pushData(objQueue, comparator);
+		workFile.pushData(objQueue);
 		workFile.stopOutStream();
 
+		stats.runCreated();
+		stats.addBytesSpilled(workFile.getBytesWritten());
+		phaseCompleted(SortStats.Phase.SPILL, phaseStart);
+
+		for (SortListener listener : listeners)
+			listener.runSpilled(workFile.getFileName(), records, workFile.getBytesWritten());
+
+	}
+
+	/**
+	 * Get a work file for the output of an intermediate merge, placed on the
+	 * device holding the fewest of the merge inputs.
+	 *
+	 * @param mergeFileList - the work files about to be merged
+	 * @return FileWrapper - the merge target
+	 */
+	protected FileWrapper<T> getMergeTarget(List<FileWrapper<T>> mergeFileList)
+	{
+		List<String> inputNames = new ArrayList<String>();
+		for (FileWrapper<T> workFile : mergeFileList)
+			inputNames.add(workFile.getFileName());
+
+		return getNextWorkFile(workDirs.nextDir(inputNames));
 	}
 
-	protected FileWrapper<T> getNextWorkFile(String tempDir)
+	protected synchronized FileWrapper<T> getNextWorkFile(String tempDir)
 	{
-		String name = "sortWork" + workFileId;
+		String name = workFilePrefix + workFileId;
 		workFileId++;
 
-		return new FileWrapper<T>(
-															getSortType(),
-																getFileName(tempDir, name));
+		FileWrapper<T> workFile = newFileWrapper(getFileName(tempDir, name));
+		workFile.setCodec(workFileCodec);
+		workFile.setRecordCodec(recordCodec);
+
+		return workFile;
+	}
+
+	/**
+	 * How work files are spread across multiple temporary directories.
+	 */
+	public enum Placement
+	{
+		/** use each directory in turn */
+		ROUND_ROBIN,
+		/** use the directory with the most usable space */
+		FREE_SPACE;
 	}
 
 }
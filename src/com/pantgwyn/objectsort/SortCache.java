@@ -0,0 +1,354 @@
+package com.pantgwyn.objectsort;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A directory of sorted outputs kept so that an unchanged input sorted the
+ * same way again need not be sorted.
+ * <p>
+ * An output is cached under a key made from the size, modification time and
+ * SHA-256 hash of the content of the sortin file, the settings of the Sort
+ * that change its output and the comparator id given to Sort.setCache. On a hit the cached output is copied,
+ * or hard linked, to the sortout file and the sort is skipped. The least
+ * recently used outputs are removed once the cache holds more than its quota.
+ * <p>
+ * The comparator id must change whenever the comparator does. A filter,
+ * projection or reducer is part of the key through the id it was set with,
+ * and a sort with one set without an id is not cached. A SortCache may be
+ * shared by many Sorts and processes.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class SortCache
+{
+
+	private static final String	ENTRY_SUFFIX	= ".sorted";
+	private static final int		HASH_BUFFER		= 1024 * 1024;
+
+	private final String				directory;
+	private final long						quotaBytes;
+	private boolean							hardLinks			= false;
+	private final AtomicLong		hits					= new AtomicLong();
+	private final AtomicLong		misses				= new AtomicLong();
+
+	/**
+	 * The cache key of a sortin file, with the size and modification time it
+	 * was made from.
+	 */
+	static class Key
+	{
+		private final String	name;
+		private final String	inName;
+		private final long		length;
+		private final long		modified;
+
+		private Key(String name, String inName, long length, long modified)
+		{
+			this.name			= name;
+			this.inName		= inName;
+			this.length		= length;
+			this.modified	= modified;
+		}
+
+		/**
+		 * @return boolean - true if the sortin file is as it was when the key was
+		 *         made
+		 */
+		private boolean isCurrent()
+		{
+			File file = new File(inName);
+
+			return file.length() == length && file.lastModified() == modified;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	/**
+	 * Constructor for SortCache
+	 *
+	 * @param directory  - the directory holding the cached outputs, created if
+	 *                   needed
+	 * @param quotaBytes - the most bytes of cached outputs to keep
+	 * @throws IOException
+	 */
+	public SortCache(String directory, long quotaBytes) throws IOException
+	{
+		this.directory	= directory;
+		this.quotaBytes	= Math.max(0, quotaBytes);
+
+		Files.createDirectories(Paths.get(directory));
+	}
+
+	/**
+	 * Hard link cached outputs to and from sortout files rather than copying
+	 * them. Linking needs the cache and the sortout files on the same file
+	 * system, and falls back to copying when they are not. A linked sortout
+	 * file shares its content with the cache so must not be changed in place;
+	 * the Sort itself replaces rather than overwrites a cached sortout file.
+	 *
+	 * @param hardLinks - true to hard link, default false
+	 */
+	public void setHardLinks(boolean hardLinks)
+	{
+		this.hardLinks = hardLinks;
+	}
+
+	/**
+	 * @return boolean - true if cached outputs are hard linked
+	 */
+	public boolean isHardLinks()
+	{
+		return hardLinks;
+	}
+
+	/**
+	 * @return long - the sorts skipped because their output was cached
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return long - the sorts whose output was not cached
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return long - the bytes of cached outputs
+	 * @throws IOException
+	 */
+	public long getSize() throws IOException
+	{
+		long size = 0;
+
+		for (Path entry : entries())
+			size += Files.size(entry);
+
+		return size;
+	}
+
+	/**
+	 * Remove every cached output.
+	 *
+	 * @throws IOException
+	 */
+	public void clear() throws IOException
+	{
+		for (Path entry : entries())
+			Files.deleteIfExists(entry);
+	}
+
+	/**
+	 * Make the cache key of a sortin file.
+	 *
+	 * @param inName       - the sortin file
+	 * @param comparatorId - identifies the sort type, comparator and anything
+	 *                     else that shapes the output
+	 * @return Key - the key
+	 * @throws IOException
+	 */
+	Key key(String inName, String comparatorId) throws IOException
+	{
+		File		file			= new File(inName);
+		long		length		= file.length();
+		long		modified	= file.lastModified();
+		byte[]	content		= hash(inName);
+
+		MessageDigest digest = newDigest();
+		digest.update((length + ":" + modified + ":" + comparatorId + ":").getBytes(StandardCharsets.UTF_8));
+		digest.update(content);
+
+		return new Key(toHex(digest.digest()), inName, length, modified);
+	}
+
+	/**
+	 * Copy or link the cached output of a key to a sortout file.
+	 *
+	 * @param key     - the key
+	 * @param outName - the sortout file
+	 * @return boolean - true on a hit, false if the output is not cached
+	 * @throws IOException
+	 */
+	boolean fetch(Key key, String outName) throws IOException
+	{
+		Path entry = entry(key);
+
+		if (!Files.exists(entry))
+		{
+			misses.incrementAndGet();
+			return false;
+		}
+
+		Path out = Paths.get(outName);
+		Files.deleteIfExists(out);
+
+		try
+		{
+			if (!link(out, entry))
+				Files.copy(entry, out, StandardCopyOption.REPLACE_EXISTING);
+		} catch (NoSuchFileException e)
+		{
+			// evicted by another process since the check
+			misses.incrementAndGet();
+			return false;
+		}
+
+		Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		hits.incrementAndGet();
+
+		return true;
+	}
+
+	/**
+	 * Add a sortout file to the cache under a key, unless the sortin file has
+	 * changed since the key was made, then remove the least recently used
+	 * outputs to bring the cache within its quota.
+	 *
+	 * @param key     - the key
+	 * @param outName - the sortout file
+	 * @throws IOException
+	 */
+	void store(Key key, String outName) throws IOException
+	{
+		Path out = Paths.get(outName);
+
+		if (!key.isCurrent() || Files.size(out) > quotaBytes)
+			return;
+
+		Path	entry	= entry(key);
+		Path	temp	= Paths.get(directory, key.name + "." + Thread.currentThread().getId() + ".tmp");
+
+		Files.deleteIfExists(temp);
+
+		if (!link(temp, out))
+			Files.copy(out, temp);
+
+		Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+
+		evict();
+	}
+
+	/**
+	 * Remove the least recently used outputs until the cache is within quota.
+	 */
+	private void evict() throws IOException
+	{
+		List<Path>	entries	= entries();
+		long				size		= 0;
+
+		for (Path entry : entries)
+			size += Files.size(entry);
+
+		entries.sort(Comparator.comparingLong(SortCache::lastUsed));
+
+		for (Path entry : entries)
+		{
+			if (size <= quotaBytes)
+				break;
+
+			size -= Files.size(entry);
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	private boolean link(Path link, Path existing)
+	{
+		if (!hardLinks)
+			return false;
+
+		try
+		{
+			Files.createLink(link, existing);
+			return true;
+		} catch (IOException | UnsupportedOperationException e)
+		{
+			return false;
+		}
+	}
+
+	private List<Path> entries() throws IOException
+	{
+		List<Path> entries = new ArrayList<Path>();
+
+		try (Stream<Path> files = Files.list(Paths.get(directory)))
+		{
+			files.filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX)).forEach(entries::add);
+		}
+
+		return entries;
+	}
+
+	private Path entry(Key key)
+	{
+		return Paths.get(directory, key.name + ENTRY_SUFFIX);
+	}
+
+	private static long lastUsed(Path entry)
+	{
+		return new File(entry.toString()).lastModified();
+	}
+
+	private static byte[] hash(String fileName) throws IOException
+	{
+		MessageDigest digest = newDigest();
+
+		try (InputStream in = Files.newInputStream(Paths.get(fileName)))
+		{
+			byte[] buffer = new byte[HASH_BUFFER];
+
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+				digest.update(buffer, 0, read);
+		}
+
+		return digest.digest();
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b));
+
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+
+/**
+ * Interface for a unit of work submitted to a SortService.
+ * <p>
+ * The job is handed a Sort that the service has prepared with a unique work
+ * file prefix and a share of the service memory budget. It would normally
+ * call one of the sort methods, for example
+ * <code>s -&gt; s.sort(inName, outName, comparator, tempDir)</code>.
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+public interface SortJob<T>
+{
+	/**
+	 * Run the sort.
+	 *
+	 * @param sort - the prepared Sort
+	 * @return true - sort completed - false - sort failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean run(Sort<T> sort) throws ClassNotFoundException,
+																	IOException;
+}
@@ -0,0 +1,56 @@
+package com.pantgwyn.objectsort;
+
+/**
+ * Interface for receiving progress events from a sort.
+ * <p>
+ * Register a listener with Sort.addSortListener. The methods are called on the
+ * thread running the sort so should return quickly. All methods have empty
+ * default implementations.
+ *
+ * @author Dave Breeze
+ *
+ */
+public interface SortListener
+{
+	/**
+	 * Called each time a period of work in one phase of the sort completes.
+	 *
+	 * @param phase - the phase of the sort
+	 * @param nanos - the duration of the period just completed
+	 * @param stats - the statistics of the sort so far
+	 */
+	public default void phaseCompleted(SortStats.Phase phase, long nanos, SortStats stats)
+	{
+	}
+
+	/**
+	 * Called when an in-memory run has been written to a work file.
+	 *
+	 * @param fileName - the fully qualified name of the work file
+	 * @param records  - the number of records in the run
+	 * @param bytes    - the bytes written to the work file
+	 */
+	public default void runSpilled(String fileName, long records, long bytes)
+	{
+	}
+
+	/**
+	 * Called when a merge pass completes - the final merge is the last pass.
+	 *
+	 * @param pass  - the pass number, starting at 1
+	 * @param runs  - the number of runs merged
+	 * @param nanos - the duration of the pass
+	 */
+	public default void mergePassCompleted(int pass, int runs, long nanos)
+	{
+	}
+
+	/**
+	 * Called when the sort ends.
+	 *
+	 * @param stats - the final statistics of the sort
+	 */
+	public default void sortCompleted(SortStats stats)
+	{
+	}
+}
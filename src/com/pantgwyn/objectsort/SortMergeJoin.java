@@ -0,0 +1,290 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Joins two inputs on a key by externally sorting each and merging the two
+ * sorted streams.
+ * <p>
+ * Each input is split into sorted runs by its own Sort. The final merge of
+ * each Sort then feeds the join directly, so no sorted copy of either input
+ * is written. The right records of each key are held while the left records
+ * of that key are paired with them; a group larger than the group memory is
+ * spilled to a work file and read back for each left record. Put the input
+ * with the smaller key groups on the right.
+ *
+ * @author Dave Breeze
+ *
+ * @param <L> class of the left records
+ * @param <R> class of the right records
+ * @param <K> class of the join key
+ */
+public class SortMergeJoin<L, R, K>
+{
+
+	private static final long					DEFAULT_GROUP_MEMORY	= 16 * 1024 * 1024;
+
+	private final Sort<L>							left;
+	private final Sort<R>							right;
+	private final Function<L, K>			leftKey;
+	private final Function<R, K>			rightKey;
+	private final Comparator<? super K>	keyComparator;
+	private long											groupMemory						= DEFAULT_GROUP_MEMORY;
+
+	/**
+	 * Constructor for SortMergeJoin
+	 * <p>
+	 * If both sorts have the same work file prefix the prefix of the right sort
+	 * is changed so that they can share temporary directories.
+	 *
+	 * @param left          - the Sort for the left input
+	 * @param leftKey       - gives the key of a left record
+	 * @param right         - the Sort for the right input
+	 * @param rightKey      - gives the key of a right record
+	 * @param keyComparator - orders the keys
+	 */
+	public SortMergeJoin(	Sort<L> left,
+												Function<L, K> leftKey,
+												Sort<R> right,
+												Function<R, K> rightKey,
+												Comparator<? super K> keyComparator)
+	{
+		this.left						= left;
+		this.leftKey				= leftKey;
+		this.right					= right;
+		this.rightKey				= rightKey;
+		this.keyComparator	= keyComparator;
+
+		if (left.getWorkFilePrefix().equals(right.getWorkFilePrefix()))
+			right.setWorkFilePrefix(right.getWorkFilePrefix() + "Right");
+	}
+
+	/**
+	 * @param groupMemory - the bytes of right records of one key held in memory
+	 *                    before the group is spilled, default 16mb
+	 */
+	public void setGroupMemory(long groupMemory)
+	{
+		this.groupMemory = Math.max(1, groupMemory);
+	}
+
+	/**
+	 * Join two files.
+	 *
+	 * @param leftInName  - String of the fully qualified left input file name
+	 * @param rightInName - String of the fully qualified right input file name
+	 * @param callback    - receives the joined pairs
+	 * @param type        - INNER, LEFT_OUTER or FULL_OUTER
+	 * @param tempDir     - String of the fully qualified directory name for work
+	 *                    files (if required)
+	 * @return true - join completed - false - join failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean join(String leftInName,
+											String rightInName,
+											JoinCallback<L, R> callback,
+											Type type,
+											String tempDir)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		return join(leftInName, rightInName, callback, type, Collections.singletonList(tempDir));
+	}
+
+	/**
+	 * Join two files, striping any work files across several temporary
+	 * directories.
+	 *
+	 * @param leftInName  - String of the fully qualified left input file name
+	 * @param rightInName - String of the fully qualified right input file name
+	 * @param callback    - receives the joined pairs
+	 * @param type        - INNER, LEFT_OUTER or FULL_OUTER
+	 * @param tempDirs    - List of the fully qualified directory names for work
+	 *                    files (if required)
+	 * @return true - join completed - false - join failed.
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public boolean join(String leftInName,
+											String rightInName,
+											JoinCallback<L, R> callback,
+											Type type,
+											List<String> tempDirs)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		Comparator<L>	leftOrder		= (a, b) -> keyComparator.compare(leftKey.apply(a), leftKey.apply(b));
+		Comparator<R>	rightOrder	= (a, b) -> keyComparator.compare(rightKey.apply(a), rightKey.apply(b));
+
+		if (!createRuns(left, leftInName, leftOrder, tempDirs) || !createRuns(right, rightInName, rightOrder, tempDirs))
+			return false;
+
+		MergeCursor<L>	leftCursor	= left.openCursor();
+		MergeCursor<R>	rightCursor	= right.openCursor();
+
+		try
+		{
+			mergeJoin(leftCursor, rightCursor, callback, type);
+		} finally
+		{
+			leftCursor.close();
+			rightCursor.close();
+		}
+
+		left.endSort();
+		right.endSort();
+
+		callback.consumeJoin(null, null);
+
+		return true;
+	}
+
+	private static <T> boolean createRuns(Sort<T> sort, String inName, Comparator<T> comparator, List<String> tempDirs)
+			throws ClassNotFoundException,
+			IOException
+	{
+		sort.sortIn		= sort.newSortIn(inName);
+		sort.sortOut	= null;
+
+		if (!sort.startRuns(comparator, tempDirs))
+			return false;
+
+		sort.readInput(0);
+
+		return true;
+	}
+
+	private void mergeJoin(	MergeCursor<L> leftCursor,
+													MergeCursor<R> rightCursor,
+													JoinCallback<L, R> callback,
+													Type type)
+																			throws ClassNotFoundException,
+																			IOException
+	{
+		L	l	= leftCursor.next();
+		R	r	= rightCursor.next();
+
+		while (l != null || r != null)
+		{
+			int compare = l == null ? 1 : r == null ? -1 : keyComparator.compare(leftKey.apply(l), rightKey.apply(r));
+
+			if (compare < 0)
+			{
+				if (type != Type.INNER)
+					callback.consumeJoin(l, null);
+				l = leftCursor.next();
+				continue;
+			}
+
+			if (compare > 0)
+			{
+				if (type == Type.FULL_OUTER)
+					callback.consumeJoin(null, r);
+				r = rightCursor.next();
+				continue;
+			}
+
+			K						key		= rightKey.apply(r);
+			RightGroup	group	= new RightGroup();
+
+			while (r != null && keyComparator.compare(rightKey.apply(r), key) == 0)
+			{
+				group.add(r);
+				r = rightCursor.next();
+			}
+
+			group.endGroup();
+
+			while (l != null && keyComparator.compare(leftKey.apply(l), key) == 0)
+			{
+				group.pairWith(l, callback);
+				l = leftCursor.next();
+			}
+
+			group.delete();
+		}
+	}
+
+	/**
+	 * The right records of one key, spilled to a work file if they outgrow the
+	 * group memory.
+	 */
+	private class RightGroup
+	{
+		private List<R>					records	= new ArrayList<R>();
+		private long						bytes		= 0;
+		private FileWrapper<R>	spill		= null;
+
+		private void add(R record) throws IOException
+		{
+			if (spill != null)
+			{
+				spill.write(record);
+				return;
+			}
+
+			records.add(record);
+			bytes += right.estimateSize(record);
+
+			if (bytes > groupMemory)
+			{
+				spill = right.getNextWorkFile(right.workDirs.nextDir());
+				spill.startOutStream();
+				spill.pushData(records);
+			}
+		}
+
+		private void endGroup() throws IOException
+		{
+			if (spill != null)
+				spill.stopOutStream();
+		}
+
+		private void pairWith(L l, JoinCallback<L, R> callback) throws ClassNotFoundException,
+																																		IOException
+		{
+			if (spill == null)
+			{
+				for (R record : records)
+					callback.consumeJoin(l, record);
+				return;
+			}
+
+			spill.startInStream();
+
+			for (R record = spill.getCurrentInputItem(); record != null; record = spill.getCurrentInputItem())
+			{
+				callback.consumeJoin(l, record);
+				spill.getNextInput();
+			}
+
+			spill.stopInStream();
+		}
+
+		private void delete()
+		{
+			if (spill != null)
+				spill.deleteFile();
+		}
+	}
+
+	/**
+	 * The records passed to the JoinCallback.
+	 */
+	public enum Type
+	{
+		/** only left and right records with matching keys */
+		INNER,
+		/** every left record, with null for the right if there is no match */
+		LEFT_OUTER,
+		/** every left and right record, with null for a missing partner */
+		FULL_OUTER;
+	}
+
+}
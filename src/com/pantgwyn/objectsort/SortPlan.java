@@ -0,0 +1,240 @@
+package com.pantgwyn.objectsort;
+
+/**
+ * The predicted plan and resource use of a sort, as returned by Sort.explain.
+ * <p>
+ * The figures are estimates from a sample of the start of the sortin file and
+ * from the memory budget, merge fan-in and parallelism of the Sort at the
+ * time explain was called.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class SortPlan
+{
+
+	long		records;
+	boolean	exact;
+	long		sampledRecords;
+	long		inputBytes;
+	long		recordHeapBytes;
+	long		workFileRecordBytes;
+	long		bufferBytes;
+	long		recordsPerRun;
+	long		runs;
+	long		memoryRuns;
+	long		naturalRuns;
+	int			mergeFanIn;
+	long		intermediateMerges;
+	long		bytesSpilled;
+	long		bytesReadFromWorkFiles;
+	long		peakTempBytes;
+	long		tempFreeBytes;
+
+	SortPlan()
+	{
+	}
+
+	/**
+	 * @return long - the estimated number of records in sortin
+	 */
+	public long getRecords()
+	{
+		return records;
+	}
+
+	/**
+	 * @return boolean - true if the whole of sortin was sampled, so the record
+	 *         count is exact
+	 */
+	public boolean isExact()
+	{
+		return exact;
+	}
+
+	/**
+	 * @return long - the number of records sampled
+	 */
+	public long getSampledRecords()
+	{
+		return sampledRecords;
+	}
+
+	/**
+	 * @return long - the size of sortin in bytes
+	 */
+	public long getInputBytes()
+	{
+		return inputBytes;
+	}
+
+	/**
+	 * @return long - the estimated heap used by one buffered record
+	 */
+	public long getRecordHeapBytes()
+	{
+		return recordHeapBytes;
+	}
+
+	/**
+	 * @return long - the estimated bytes per record in a work file, after any
+	 *         work file compression
+	 */
+	public long getWorkFileRecordBytes()
+	{
+		return workFileRecordBytes;
+	}
+
+	/**
+	 * @return long - the memory, in bytes, available to in-memory runs
+	 */
+	public long getBufferBytes()
+	{
+		return bufferBytes;
+	}
+
+	/**
+	 * @return long - the estimated records in each run
+	 */
+	public long getRecordsPerRun()
+	{
+		return recordsPerRun;
+	}
+
+	/**
+	 * @return long - the estimated number of runs, 1 if the sort completes in
+	 *         memory or sortin is a single natural run
+	 */
+	public long getRuns()
+	{
+		return runs;
+	}
+
+	/**
+	 * @return long - the estimated runs kept in memory for the final merge
+	 *         rather than spilled, including the last buffers of the input
+	 */
+	public long getMemoryRuns()
+	{
+		return memoryRuns;
+	}
+
+	/**
+	 * @return long - the natural runs sortin is expected to be made of, written
+	 *         without an in-memory sort - 0 if none are expected
+	 */
+	public long getNaturalRuns()
+	{
+		return naturalRuns;
+	}
+
+	/**
+	 * @return boolean - true if the sort is expected to complete in memory
+	 */
+	public boolean isInMemory()
+	{
+		return runs <= 1 && naturalRuns == 0;
+	}
+
+	/**
+	 * @return int - the number of work files merged at once
+	 */
+	public int getMergeFanIn()
+	{
+		return mergeFanIn;
+	}
+
+	/**
+	 * @return long - the estimated merges of work files before the final merge
+	 */
+	public long getIntermediateMerges()
+	{
+		return intermediateMerges;
+	}
+
+	/**
+	 * @return long - the most merges the earliest records pass through,
+	 *         including the final merge - 0 for an in-memory sort or a single
+	 *         natural run
+	 */
+	public long getMergePasses()
+	{
+		return runs <= 1 ? 0 : intermediateMerges + 1;
+	}
+
+	/**
+	 * @return long - the estimated bytes written to work files
+	 */
+	public long getBytesSpilled()
+	{
+		return bytesSpilled;
+	}
+
+	/**
+	 * @return long - the estimated bytes read back from work files
+	 */
+	public long getBytesReadFromWorkFiles()
+	{
+		return bytesReadFromWorkFiles;
+	}
+
+	/**
+	 * @return long - the estimated total bytes read and written, taking the
+	 *         output as the size of sortin
+	 */
+	public long getTotalIoBytes()
+	{
+		return 2 * inputBytes + bytesSpilled + bytesReadFromWorkFiles;
+	}
+
+	/**
+	 * @return long - the estimated peak space used in the temporary directories
+	 */
+	public long getPeakTempBytes()
+	{
+		return peakTempBytes;
+	}
+
+	/**
+	 * @return long - the usable space in the temporary directories
+	 */
+	public long getTempFreeBytes()
+	{
+		return tempFreeBytes;
+	}
+
+	/**
+	 * @return boolean - true if the work files are expected to fit in the
+	 *         temporary directories
+	 */
+	public boolean fitsTempSpace()
+	{
+		return peakTempBytes <= tempFreeBytes;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("records:").append(records).append(exact ? "" : " (estimated)");
+		sb.append(" input bytes:").append(inputBytes);
+		sb.append(" record heap bytes:").append(recordHeapBytes);
+		sb.append(" buffer bytes:").append(bufferBytes);
+		sb.append(" records per run:").append(recordsPerRun);
+		sb.append(" runs:").append(runs);
+		sb.append(" memory runs:").append(memoryRuns);
+		sb.append(" natural runs:").append(naturalRuns);
+		sb.append(isInMemory() ? " in memory" : bytesSpilled > 0 ? " spills" : " no spill");
+		sb.append(" merge fan-in:").append(mergeFanIn);
+		sb.append(" merge passes:").append(getMergePasses());
+		sb.append(" bytes spilled:").append(bytesSpilled);
+		sb.append(" bytes read from work files:").append(bytesReadFromWorkFiles);
+		sb.append(" total io bytes:").append(getTotalIoBytes());
+		sb.append(" peak temp bytes:").append(peakTempBytes);
+		sb.append(" temp free bytes:").append(tempFreeBytes);
+
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.pantgwyn.objectsort;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many sorts concurrently within one JVM.
+ * <p>
+ * Sorts are run on a shared thread pool. Each submitted sort is given a work
+ * file prefix that is unique to the job, so sorts may share temporary
+ * directories, and a quota of a global MemoryGovernor budget in place of
+ * sizing itself from the free heap. Quotas are rebalanced between the running
+ * sorts as they start new runs and are returned when each sort ends.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class SortService
+{
+
+	private final ExecutorService	executor;
+	private final MemoryGovernor	governor;
+	private final String					serviceId;
+	private final AtomicLong			jobId					= new AtomicLong();
+	private final Set<Sort<?>>		runningSorts	= Collections.newSetFromMap(new IdentityHashMap<Sort<?>, Boolean>());
+
+	/**
+	 * Constructor for SortService
+	 *
+	 * @param threads     - the number of sorts that may run at the same time
+	 * @param memoryBytes - the memory budget, in bytes, shared by all sorts
+	 */
+	public SortService(int threads, long memoryBytes)
+	{
+		this(Executors.newFixedThreadPool(threads), new MemoryGovernor(memoryBytes));
+	}
+
+	/**
+	 * Constructor for SortService
+	 *
+	 * @param executor - the thread pool the sorts are run on
+	 * @param governor - the memory budget shared by all sorts
+	 */
+	public SortService(ExecutorService executor, MemoryGovernor governor)
+	{
+		this.executor	= executor;
+		this.governor	= governor;
+		serviceId			= UUID.randomUUID().toString().substring(0, 8);
+	}
+
+	/**
+	 * @return ExecutorService - the thread pool shared by the sorts
+	 */
+	public ExecutorService getExecutor()
+	{
+		return executor;
+	}
+
+	/**
+	 * @return MemoryGovernor - the memory budget shared by the sorts
+	 */
+	public MemoryGovernor getGovernor()
+	{
+		return governor;
+	}
+
+	/**
+	 * Submit a sort to run on the shared thread pool.
+	 * <p>
+	 * A Sort instance holds the state of one run, so the same instance may not be
+	 * submitted again until its previous job has finished.
+	 *
+	 * @param sort - the Sort to run - e.g. a new TextSort
+	 * @param job  - the work to do with the sort
+	 * @param <T>  class of the objects being sorted.
+	 * @return Future - completes with the result of the job
+	 */
+	public <T> Future<Boolean> submit(Sort<T> sort, SortJob<T> job)
+	{
+		synchronized (runningSorts)
+		{
+			if (!runningSorts.add(sort))
+				throw new IllegalStateException("sort is already running");
+		}
+
+		sort.setWorkFilePrefix(Sort.WORK_FILE_PREFIX + "-" + serviceId + "-" + jobId.getAndIncrement() + "-");
+
+		try
+		{
+			return executor.submit(() -> run(sort, job));
+		} catch (RuntimeException e)
+		{
+			finished(sort);
+			throw e;
+		}
+	}
+
+	private <T> boolean run(Sort<T> sort, SortJob<T> job) throws Exception
+	{
+		MemoryGovernor.Quota quota = null;
+
+		try
+		{
+			quota = governor.acquire();
+			sort.setMemoryQuota(quota);
+
+			return job.run(sort);
+		} finally
+		{
+			sort.setMemoryQuota(null);
+			if (quota != null)
+				quota.close();
+			finished(sort);
+		}
+	}
+
+	private void finished(Sort<?> sort)
+	{
+		synchronized (runningSorts)
+		{
+			runningSorts.remove(sort);
+		}
+	}
+
+	/**
+	 * Stop accepting sorts and wait for the running sorts to finish.
+	 *
+	 * @param timeout - the maximum time to wait
+	 * @param unit    - the unit of timeout
+	 * @return true - all sorts finished - false - the timeout elapsed first
+	 * @throws InterruptedException
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		executor.shutdown();
+		return executor.awaitTermination(timeout, unit);
+	}
+
+}
@@ -0,0 +1,255 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A sort that many producer threads may add records to at the same time.
+ * <p>
+ * Each producer thread fills its own run buffer, sorting and spilling it to a
+ * work file, or keeping it in memory within the memory run budget of the Sort,
+ * without reference to the other producers, so adding records does not funnel
+ * through a single lock. The memory budget of the Sort is shared equally
+ * between the producer buffers. When all producers have finished,
+ * finish merges every run - on disk and still in memory - into the output.
+ * <p>
+ * Obtain a session from Sort.openSession. Calls to finish must happen after
+ * every add has returned, for example after joining the producer threads.
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+public class SortSession<T>
+{
+
+	private final Sort<T>										sort;
+	private final Comparator<T>							comparator;
+	private final long											budget;
+	private final List<ProducerBuffer>			buffers			= new ArrayList<ProducerBuffer>();
+	private final List<FileWrapper<T>>			runs				= new ArrayList<FileWrapper<T>>();
+	private final ThreadLocal<ProducerBuffer>	localBuffer	= ThreadLocal.withInitial(this::newBuffer);
+	private final LongAdder									recordsAdded	= new LongAdder();
+	private volatile int										producers		= 0;
+	private volatile boolean								finished		= false;
+
+	/**
+	 * The run buffer of one producer thread.
+	 */
+	private class ProducerBuffer
+	{
+		private List<T>	records	= new ArrayList<T>();
+		private long		bytes		= 0;
+	}
+
+	SortSession(Sort<T> sort, Comparator<T> comparator, List<String> tempDirs) throws IOException
+	{
+		this.sort = sort;
+
+		if (!sort.startRuns(comparator, tempDirs))
+			throw new IOException("cannot access temp directories " + tempDirs);
+
+		this.comparator = sort.runComparator;
+
+		long limit = sort.getBufferLimit();
+		if (limit <= 0)
+			limit = (long) (sort.getAvailableMemory() * Math.min(sort.memoryFactor, 1));
+
+		budget = Math.max(1, limit);
+	}
+
+	/**
+	 * Add a record to the sort. May be called by many threads at once.
+	 *
+	 * @param record - the record
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public void add(T record) throws IOException,
+														ClassNotFoundException
+	{
+		if (finished)
+			throw new IllegalStateException("session has finished");
+
+		ProducerBuffer buffer = localBuffer.get();
+
+		buffer.records.add(record);
+		buffer.bytes += sort.estimateSize(record);
+		recordsAdded.increment();
+
+		if (buffer.bytes >= bufferLimit())
+			spill(buffer);
+	}
+
+	/**
+	 * Add records to the sort. May be called by many threads at once.
+	 *
+	 * @param records - the records
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public void addAll(Collection<? extends T> records) throws IOException,
+																													ClassNotFoundException
+	{
+		for (T record : records)
+			add(record);
+	}
+
+	/**
+	 * Merge all runs into the output of the sort. Call once every producer has
+	 * finished adding records.
+	 *
+	 * @return true - sort completed - false - sort failed.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public boolean finish() throws IOException,
+													ClassNotFoundException
+	{
+		if (finished)
+			throw new IllegalStateException("session has finished");
+
+		finished = true;
+
+		List<FileWrapper<T>> mergeFiles;
+
+		synchronized (runs)
+		{
+			mergeFiles = new ArrayList<FileWrapper<T>>(runs);
+			runs.clear();
+		}
+
+		mergeFiles.addAll(sort.takeRuns());
+
+		synchronized (buffers)
+		{
+			for (ProducerBuffer buffer : buffers)
+			{
+				if (buffer.records.isEmpty())
+					continue;
+
+				sort.stats.bufferFilled(buffer.records.size(), buffer.bytes);
+
+				long phaseStart = System.nanoTime();
+				buffer.records.sort(comparator);
+				sort.phaseCompleted(SortStats.Phase.RUN_SORT, phaseStart);
+
+				// the remaining buffers join the merge from memory
+				mergeFiles.add(new FileWrapper<T>(sort.getSortType(), buffer.records));
+				buffer.records = new ArrayList<T>();
+			}
+
+			buffers.clear();
+		}
+
+		sort.recordsRead = recordsAdded.sum();
+		sort.stats.addRecordsRead(sort.recordsRead);
+
+		if (mergeFiles.isEmpty())
+			sort.createOutput(new ArrayList<T>(), comparator);
+		else
+			sort.mergePass(sort.sortOut, mergeFiles, comparator, SortStats.Phase.OUTPUT);
+
+		sort.endSort();
+
+		return true;
+	}
+
+	/**
+	 * @return long - the records added so far
+	 */
+	public long getRecordsAdded()
+	{
+		return recordsAdded.sum();
+	}
+
+	/**
+	 * Count records that reach the sort other than through add, such as those
+	 * of a sorted input file added as a run.
+	 *
+	 * @param records - the number of records
+	 */
+	void addRecordsAdded(long records)
+	{
+		recordsAdded.add(records);
+	}
+
+	private ProducerBuffer newBuffer()
+	{
+		ProducerBuffer buffer = new ProducerBuffer();
+
+		synchronized (buffers)
+		{
+			buffers.add(buffer);
+			producers = buffers.size();
+		}
+
+		return buffer;
+	}
+
+	private long bufferLimit()
+	{
+		return Math.max(1, budget / Math.max(1, producers));
+	}
+
+	private void spill(ProducerBuffer buffer) throws IOException,
+																					ClassNotFoundException
+	{
+		List<T>								records	= buffer.records;
+		long									bytes		= buffer.bytes;
+		List<FileWrapper<T>>	spilled	= new ArrayList<FileWrapper<T>>(1);
+
+		sort.stats.bufferFilled(records.size(), bytes);
+		buffer.records	= new ArrayList<T>();
+		buffer.bytes		= 0;
+
+		if (sort.keepRun(records, bytes, false))
+			return;
+
+		sort.createWorkFile(records, spilled, comparator);
+
+		addRun(spilled.get(0));
+	}
+
+	/**
+	 * Add a run that is already sorted, merging the runs so far once there are
+	 * too many of them.
+	 *
+	 * @param run - the sorted run
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	void addRun(FileWrapper<T> run) throws IOException,
+																	ClassNotFoundException
+	{
+		List<FileWrapper<T>> mergeFiles = null;
+
+		synchronized (runs)
+		{
+			runs.add(run);
+
+			if (runs.size() >= sort.mergeFanIn)
+			{
+				mergeFiles = new ArrayList<FileWrapper<T>>(runs);
+				runs.clear();
+			}
+		}
+
+		if (mergeFiles != null)
+		{
+			// this producer merges while the others carry on spilling
+			FileWrapper<T> mergeTarget = sort.getMergeTarget(mergeFiles);
+			sort.mergePass(mergeTarget, mergeFiles, comparator, SortStats.Phase.MERGE);
+
+			synchronized (runs)
+			{
+				runs.add(mergeTarget);
+			}
+		}
+	}
+
+}
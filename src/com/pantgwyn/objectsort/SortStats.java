@@ -0,0 +1,383 @@
+package com.pantgwyn.objectsort;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics gathered while a sort runs.
+ * <p>
+ * Phase timings show where the elapsed time of a sort went: reading the input
+ * (INGEST), sorting the in-memory runs (RUN_SORT), writing work files (SPILL),
+ * intermediate merges (MERGE) and producing the output (OUTPUT). Together with
+ * the comparator call count and the bytes moved to and from the work files
+ * these show whether a sort is bound by the CPU, the comparator or I/O.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class SortStats implements SortStatsMXBean
+{
+
+	/**
+	 * The phases of a sort.
+	 */
+	public enum Phase
+	{
+		INGEST,
+		RUN_SORT,
+		SPILL,
+		MERGE,
+		OUTPUT;
+	}
+
+	private final LongAdder[]		phaseNanos							= new LongAdder[Phase.values().length];
+	private final LongAdder			comparisons							= new LongAdder();
+	private final LongAdder			recordsRead							= new LongAdder();
+	private final LongAdder			recordsFiltered					= new LongAdder();
+	private final LongAdder			recordsWritten					= new LongAdder();
+	private final LongAdder			bytesSpilled						= new LongAdder();
+	private final LongAdder			bytesReadFromWorkFiles	= new LongAdder();
+	private final List<long[]>	mergePasses							= new ArrayList<long[]>();
+	private volatile long				startNanos;
+	private volatile long				endNanos;
+	private volatile long				inputBytes;
+	private volatile long				outputBytes;
+	private volatile int				runsCreated;
+	private volatile int				runsInMemory;
+	private volatile long				maxBufferRecords;
+	private volatile long				maxBufferBytes;
+
+	public SortStats()
+	{
+		for (int i = 0; i < phaseNanos.length; i++)
+			phaseNanos[i] = new LongAdder();
+	}
+
+	/**
+	 * Clear the statistics and mark the start of a sort.
+	 */
+	public synchronized void start()
+	{
+		for (LongAdder adder : phaseNanos)
+			adder.reset();
+
+		comparisons.reset();
+		recordsRead.reset();
+		recordsFiltered.reset();
+		recordsWritten.reset();
+		bytesSpilled.reset();
+		bytesReadFromWorkFiles.reset();
+		mergePasses.clear();
+		inputBytes				= 0;
+		outputBytes				= 0;
+		runsCreated				= 0;
+		runsInMemory			= 0;
+		maxBufferRecords	= 0;
+		maxBufferBytes		= 0;
+		endNanos					= 0;
+		startNanos				= System.nanoTime();
+	}
+
+	/**
+	 * Mark the end of a sort.
+	 */
+	public void stop()
+	{
+		endNanos = System.nanoTime();
+	}
+
+	/**
+	 * Wrap a comparator so that its calls are counted.
+	 *
+	 * @param comparator - the comparator to count
+	 * @param <T>        class of the objects being compared
+	 * @return Comparator - the counting comparator
+	 */
+	public <T> Comparator<T> countComparisons(Comparator<T> comparator)
+	{
+		return (o1, o2) -> {
+			comparisons.increment();
+			return comparator.compare(o1, o2);
+		};
+	}
+
+	/**
+	 * @param count - comparisons made without a counting comparator
+	 */
+	public void addComparisons(long count)
+	{
+		comparisons.add(count);
+	}
+
+	public void addPhaseNanos(Phase phase, long nanos)
+	{
+		phaseNanos[phase.ordinal()].add(nanos);
+	}
+
+	public void addRecordsRead(long records)
+	{
+		recordsRead.add(records);
+	}
+
+	public void addRecordsFiltered(long records)
+	{
+		recordsFiltered.add(records);
+	}
+
+	public void addRecordsWritten(long records)
+	{
+		recordsWritten.add(records);
+	}
+
+	public void addBytesSpilled(long bytes)
+	{
+		bytesSpilled.add(bytes);
+	}
+
+	public void addBytesReadFromWorkFiles(long bytes)
+	{
+		bytesReadFromWorkFiles.add(bytes);
+	}
+
+	public void setInputBytes(long inputBytes)
+	{
+		this.inputBytes = inputBytes;
+	}
+
+	public void setOutputBytes(long outputBytes)
+	{
+		this.outputBytes = outputBytes;
+	}
+
+	public synchronized void runCreated()
+	{
+		runsCreated++;
+	}
+
+	/**
+	 * Record a sorted run kept in memory rather than spilled.
+	 */
+	public synchronized void runKeptInMemory()
+	{
+		runsInMemory++;
+	}
+
+	/**
+	 * Record the size of an in-memory run just before it is sorted.
+	 *
+	 * @param records - the records buffered
+	 * @param bytes   - the estimated bytes buffered, 0 if not estimated
+	 */
+	public synchronized void bufferFilled(long records, long bytes)
+	{
+		maxBufferRecords	= Math.max(maxBufferRecords, records);
+		maxBufferBytes		= Math.max(maxBufferBytes, bytes);
+	}
+
+	/**
+	 * Record a completed merge pass.
+	 *
+	 * @param runs  - the number of runs merged
+	 * @param nanos - the duration of the pass
+	 * @return int - the pass number, starting at 1
+	 */
+	public synchronized int mergePassCompleted(int runs, long nanos)
+	{
+		mergePasses.add(new long[] { runs, nanos });
+		return mergePasses.size();
+	}
+
+	public long getPhaseNanos(Phase phase)
+	{
+		return phaseNanos[phase.ordinal()].sum();
+	}
+
+	private long getPhaseMillis(Phase phase)
+	{
+		return TimeUnit.NANOSECONDS.toMillis(getPhaseNanos(phase));
+	}
+
+	@Override
+	public long getElapsedMillis()
+	{
+		if (startNanos == 0)
+			return 0;
+
+		long end = endNanos == 0 ? System.nanoTime() : endNanos;
+		return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+	}
+
+	@Override
+	public long getIngestMillis()
+	{
+		return getPhaseMillis(Phase.INGEST);
+	}
+
+	@Override
+	public long getRunSortMillis()
+	{
+		return getPhaseMillis(Phase.RUN_SORT);
+	}
+
+	@Override
+	public long getSpillMillis()
+	{
+		return getPhaseMillis(Phase.SPILL);
+	}
+
+	@Override
+	public long getMergeMillis()
+	{
+		return getPhaseMillis(Phase.MERGE);
+	}
+
+	@Override
+	public long getOutputMillis()
+	{
+		return getPhaseMillis(Phase.OUTPUT);
+	}
+
+	@Override
+	public long getRecordsRead()
+	{
+		return recordsRead.sum();
+	}
+
+	@Override
+	public long getRecordsFiltered()
+	{
+		return recordsFiltered.sum();
+	}
+
+	@Override
+	public long getRecordsWritten()
+	{
+		return recordsWritten.sum();
+	}
+
+	@Override
+	public double getRecordsPerSecond()
+	{
+		long millis = getElapsedMillis();
+		if (millis == 0)
+			return 0;
+
+		return getRecordsRead() * 1000.0 / millis;
+	}
+
+	@Override
+	public long getInputBytes()
+	{
+		return inputBytes;
+	}
+
+	@Override
+	public long getOutputBytes()
+	{
+		return outputBytes;
+	}
+
+	@Override
+	public long getBytesSpilled()
+	{
+		return bytesSpilled.sum();
+	}
+
+	@Override
+	public long getBytesReadFromWorkFiles()
+	{
+		return bytesReadFromWorkFiles.sum();
+	}
+
+	@Override
+	public long getComparisons()
+	{
+		return comparisons.sum();
+	}
+
+	@Override
+	public int getRunsCreated()
+	{
+		return runsCreated;
+	}
+
+	@Override
+	public int getRunsInMemory()
+	{
+		return runsInMemory;
+	}
+
+	@Override
+	public synchronized int getMergePasses()
+	{
+		return mergePasses.size();
+	}
+
+	@Override
+	public synchronized int[] getRunsPerMergePass()
+	{
+		int[] runs = new int[mergePasses.size()];
+		for (int i = 0; i < runs.length; i++)
+			runs[i] = (int) mergePasses.get(i)[0];
+		return runs;
+	}
+
+	@Override
+	public synchronized long[] getMergePassMillis()
+	{
+		long[] millis = new long[mergePasses.size()];
+		for (int i = 0; i < millis.length; i++)
+			millis[i] = TimeUnit.NANOSECONDS.toMillis(mergePasses.get(i)[1]);
+		return millis;
+	}
+
+	@Override
+	public long getMaxBufferRecords()
+	{
+		return maxBufferRecords;
+	}
+
+	@Override
+	public long getMaxBufferBytes()
+	{
+		return maxBufferBytes;
+	}
+
+	@Override
+	public boolean isRunning()
+	{
+		return startNanos != 0 && endNanos == 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("elapsed:").append(getElapsedMillis()).append("ms");
+		for (Phase phase : Phase.values())
+			sb.append(" ").append(phase.name().toLowerCase()).append(":").append(getPhaseMillis(phase)).append("ms");
+		sb.append(" records read:").append(getRecordsRead());
+		if (getRecordsFiltered() > 0)
+			sb.append(" records filtered:").append(getRecordsFiltered());
+		sb.append(" records written:").append(getRecordsWritten());
+		sb.append(" records/s:").append(Math.round(getRecordsPerSecond()));
+		sb.append(" comparisons:").append(getComparisons());
+		sb.append(" input bytes:").append(getInputBytes());
+		sb.append(" output bytes:").append(getOutputBytes());
+		sb.append(" bytes spilled:").append(getBytesSpilled());
+		sb.append(" bytes read from work files:").append(getBytesReadFromWorkFiles());
+		sb.append(" runs:").append(getRunsCreated());
+		if (getRunsInMemory() > 0)
+			sb.append(" runs in memory:").append(getRunsInMemory());
+		sb.append(" merge passes:").append(getMergePasses());
+		sb.append(" max buffer records:").append(getMaxBufferRecords());
+		sb.append(" max buffer bytes:").append(getMaxBufferBytes());
+
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.pantgwyn.objectsort;
+
+/**
+ * JMX view of the statistics of a sort.
+ * <p>
+ * Register a sort with Sort.registerMBean to expose its SortStats. The values
+ * are those of the sort in progress, or of the last sort run by the instance.
+ *
+ * @author Dave Breeze
+ *
+ */
+public interface SortStatsMXBean
+{
+	public long getElapsedMillis();
+
+	public long getIngestMillis();
+
+	public long getRunSortMillis();
+
+	public long getSpillMillis();
+
+	public long getMergeMillis();
+
+	public long getOutputMillis();
+
+	public long getRecordsRead();
+
+	public long getRecordsFiltered();
+
+	public long getRecordsWritten();
+
+	public double getRecordsPerSecond();
+
+	public long getInputBytes();
+
+	public long getOutputBytes();
+
+	public long getBytesSpilled();
+
+	public long getBytesReadFromWorkFiles();
+
+	public long getComparisons();
+
+	public int getRunsCreated();
+
+	public int getRunsInMemory();
+
+	public int getMergePasses();
+
+	public int[] getRunsPerMergePass();
+
+	public long[] getMergePassMillis();
+
+	public long getMaxBufferRecords();
+
+	public long getMaxBufferBytes();
+
+	public boolean isRunning();
+}
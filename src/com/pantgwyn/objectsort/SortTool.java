@@ -0,0 +1,491 @@
+package com.pantgwyn.objectsort;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line entry point, so that large files can be sorted and the sort
+ * tuned without writing java.
+ * <p>
+ * Run with <code>java -jar ObjectSort-1.0.0.jar [options] sortin...</code>,
+ * or -h for the options. Compressed sortin files are recognised by their
+ * extension or, for the text formats, their magic bytes, and the sortout file
+ * is compressed if its name has the extension of a registered codec. The
+ * statistics of the sort are printed to stderr when it finishes.
+ *
+ * @author Dave Breeze
+ *
+ */
+public final class SortTool
+{
+
+	private static final String USAGE = String.join(System.lineSeparator(),
+			"usage: java -jar ObjectSort.jar [options] sortin...",
+			"",
+			"  -o FILE             sortout file (required)",
+			"  -f FORMAT           text (default), csv, jsonl, binary or object",
+			"  -k KEY              a sort key, most significant first, may be repeated",
+			"                        text, csv: COLUMN[:string|nocase|number][:desc]",
+			"                                   1 based column, default the whole line or",
+			"                                   the first column",
+			"                        jsonl:     PATH[:desc] e.g. $.user.id",
+			"                        binary:    OFFSET:LENGTH[:unsigned|signed|bcd][:desc]",
+			"  -t CHAR             field separator of text keys, default tab",
+			"  -l LENGTH           record length of binary records",
+			"  -c CLASS            Comparator class of object records",
+			"  -m SIZE             memory budget, e.g. 512m or 2g, default half the free heap",
+			"  -M SIZE             memory run budget for runs kept in memory, default 0",
+			"  -p THREADS          threads reading the sortin files, default 1",
+			"  -T DIR              directory for work files, may be repeated, default",
+			"                        java.io.tmpdir",
+			"  --fan-in N          the most runs merged at once",
+			"  --work-codec EXT    compress work files, e.g. gz",
+			"  --output-codec EXT  compress the sortout file whatever its name",
+			"  -q                  do not print the statistics",
+			"  -v                  verbose messages",
+			"  -h                  print this help");
+
+	private String				format					= "text";
+	private String				sortOutName;
+	private List<String>	sortInNames			= new ArrayList<String>();
+	private List<String>	keys						= new ArrayList<String>();
+	private char					separator				= '\t';
+	private int						recordLength		= 0;
+	private String				comparatorClass;
+	private long					memoryBudget		= 0;
+	private long					memoryRunBudget	= 0;
+	private int						parallelism			= 1;
+	private List<String>	tempDirs				= new ArrayList<String>();
+	private int						mergeFanIn			= 0;
+	private Codec					workFileCodec;
+	private Codec					outputCodec;
+	private boolean				quiet						= false;
+	private boolean				verbose					= false;
+
+	private SortTool()
+	{
+	}
+
+	/**
+	 * @param args - the options and sortin files, see -h
+	 */
+	public static void main(String[] args)
+	{
+		System.exit(run(args));
+	}
+
+	/**
+	 * @return int - 0 if sorted, 1 if the sort failed, 2 for a usage error
+	 */
+	private static int run(String[] args)
+	{
+		PrintStream	err		= System.err;
+		SortTool		tool	= new SortTool();
+
+		try
+		{
+			if (!tool.parse(args))
+			{
+				err.println(USAGE);
+				return 0;
+			}
+
+			SortStats stats = tool.sort();
+
+			if (stats == null)
+			{
+				err.println("SortTool: sort failed");
+				return 1;
+			}
+
+			if (!tool.quiet)
+				err.println(stats);
+
+			return 0;
+		} catch (IllegalArgumentException e)
+		{
+			err.println("SortTool: " + e.getMessage());
+			err.println("try -h for the options");
+			return 2;
+		} catch (IOException | ClassNotFoundException e)
+		{
+			err.println("SortTool: " + e);
+			return 1;
+		}
+	}
+
+	/**
+	 * @return boolean - false if help was asked for
+	 */
+	private boolean parse(String[] args) throws IOException
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+
+			if (!arg.startsWith("-"))
+			{
+				addSortIn(arg);
+				continue;
+			}
+
+			switch (arg)
+			{
+				case "-h":
+				case "--help":
+					return false;
+				case "-q":
+					quiet = true;
+					break;
+				case "-v":
+					verbose = true;
+					break;
+				case "-o":
+					sortOutName = value(args, ++i, arg);
+					break;
+				case "-f":
+					format = value(args, ++i, arg).toLowerCase(Locale.ROOT);
+					break;
+				case "-k":
+					keys.add(value(args, ++i, arg));
+					break;
+				case "-t":
+					separator = separator(value(args, ++i, arg));
+					break;
+				case "-l":
+					recordLength = number(value(args, ++i, arg), arg);
+					break;
+				case "-c":
+					comparatorClass = value(args, ++i, arg);
+					break;
+				case "-m":
+					memoryBudget = size(value(args, ++i, arg), arg);
+					break;
+				case "-M":
+					memoryRunBudget = size(value(args, ++i, arg), arg);
+					break;
+				case "-p":
+					parallelism = number(value(args, ++i, arg), arg);
+					break;
+				case "-T":
+					tempDirs.add(value(args, ++i, arg));
+					break;
+				case "--fan-in":
+					mergeFanIn = number(value(args, ++i, arg), arg);
+					break;
+				case "--work-codec":
+					workFileCodec = codec(value(args, ++i, arg));
+					break;
+				case "--output-codec":
+					outputCodec = codec(value(args, ++i, arg));
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option " + arg);
+			}
+		}
+
+		if (sortOutName == null)
+			throw new IllegalArgumentException("no sortout file, use -o");
+		if (sortInNames.isEmpty())
+			throw new IllegalArgumentException("no sortin files");
+
+		if (tempDirs.isEmpty())
+			tempDirs.add(System.getProperty("java.io.tmpdir"));
+
+		return true;
+	}
+
+	/**
+	 * Add a sortin file, expanding a glob pattern the shell has left alone.
+	 */
+	private void addSortIn(String name) throws IOException
+	{
+		if (!name.matches(".*[*?\\[{].*"))
+		{
+			sortInNames.add(name);
+			return;
+		}
+
+		List<String> names = Sort.glob(name);
+
+		if (names.isEmpty())
+			throw new IllegalArgumentException("no files match " + name);
+
+		sortInNames.addAll(names);
+	}
+
+	/**
+	 * Build the Sort and comparator for the format and run the sort.
+	 *
+	 * @return SortStats - the statistics, null if the sort failed
+	 */
+	private SortStats sort() throws ClassNotFoundException,
+														IOException
+	{
+		double factor = Sort.DEFAULT_MEMORY_FACTOR;
+
+		switch (format)
+		{
+			case "text":
+				return sort(new TextSort(factor, verbose), textComparator());
+			case "csv":
+				return sort(new CSVSort(factor, verbose), TextKey.csvComparator(textKeys()));
+			case "jsonl":
+				return jsonSort(factor);
+			case "binary":
+				return binarySort(factor);
+			case "object":
+				return sort(new ObjectSort<Object>(factor, verbose), objectComparator());
+			default:
+				throw new IllegalArgumentException("unknown format " + format);
+		}
+	}
+
+	private <T> SortStats sort(Sort<T> sort, Comparator<T> comparator) throws ClassNotFoundException,
+																																	IOException
+	{
+		if (memoryBudget > 0)
+			sort.setMemoryBudget(memoryBudget);
+		if (mergeFanIn > 0)
+			sort.setMergeFanIn(mergeFanIn);
+
+		sort.setMemoryRunBudget(memoryRunBudget);
+		sort.setParallelism(parallelism);
+		sort.setWorkFileCodec(workFileCodec);
+		sort.setDetectInputCodec(format.equals("text") || format.equals("csv") || format.equals("jsonl"));
+		sort.setOutputCodec(outputCodec);
+
+		boolean sorted = sortInNames.size() == 1
+				? sort.sort(sortInNames.get(0), sortOutName, comparator, tempDirs)
+				: sort.sort(sortInNames, sortOutName, comparator, tempDirs);
+
+		return sorted ? sort.getStats() : null;
+	}
+
+	private Comparator<String> textComparator()
+	{
+		if (keys.isEmpty())
+			return Comparator.naturalOrder();
+
+		return TextKey.comparator(separator, textKeys());
+	}
+
+	/**
+	 * @return TextKey[] - the keys given as COLUMN[:TYPE][:desc], or the first
+	 *         column if none were given
+	 */
+	private TextKey[] textKeys()
+	{
+		if (keys.isEmpty())
+			return new TextKey[] { new TextKey(0, TextKey.Format.STRING) };
+
+		TextKey[] textKeys = new TextKey[keys.size()];
+
+		for (int i = 0; i < textKeys.length; i++)
+		{
+			String[]				parts			= keys.get(i).split(":");
+			int							column		= number(parts[0], "-k") - 1;
+			TextKey.Format	keyFormat	= TextKey.Format.STRING;
+			boolean					ascending	= true;
+
+			for (int p = 1; p < parts.length; p++)
+			{
+				switch (parts[p].toLowerCase(Locale.ROOT))
+				{
+					case "string":
+						keyFormat = TextKey.Format.STRING;
+						break;
+					case "nocase":
+						keyFormat = TextKey.Format.IGNORE_CASE;
+						break;
+					case "number":
+						keyFormat = TextKey.Format.NUMBER;
+						break;
+					default:
+						ascending = ascending(parts[p], keys.get(i));
+						break;
+				}
+			}
+
+			if (column < 0)
+				throw new IllegalArgumentException("key columns start at 1: " + keys.get(i));
+
+			textKeys[i] = new TextKey(column, keyFormat, ascending);
+		}
+
+		return textKeys;
+	}
+
+	private SortStats jsonSort(double factor) throws ClassNotFoundException,
+																					IOException
+	{
+		if (keys.isEmpty())
+			throw new IllegalArgumentException("jsonl needs at least one -k PATH");
+
+		List<String>	paths			= new ArrayList<String>();
+		boolean[]			ascending	= new boolean[keys.size()];
+
+		for (int i = 0; i < ascending.length; i++)
+		{
+			String	key		= keys.get(i);
+			int			split	= key.lastIndexOf(':');
+
+			// a path may itself hold a colon inside ['name']
+			ascending[i] = true;
+			if (split > key.lastIndexOf(']') && split > key.lastIndexOf('.'))
+			{
+				ascending[i]	= ascending(key.substring(split + 1), key);
+				key						= key.substring(0, split);
+			}
+
+			paths.add(key);
+		}
+
+		JsonSort sort = new JsonSort(paths, factor, verbose);
+
+		return sort(sort, sort.comparator(ascending));
+	}
+
+	private SortStats binarySort(double factor) throws ClassNotFoundException,
+																						IOException
+	{
+		if (recordLength <= 0)
+			throw new IllegalArgumentException("binary needs a record length, use -l");
+
+		BinaryKey[] binaryKeys = new BinaryKey[Math.max(1, keys.size())];
+
+		if (keys.isEmpty())
+			binaryKeys[0] = new BinaryKey(0, recordLength, BinaryKey.Format.UNSIGNED);
+
+		for (int i = 0; i < keys.size(); i++)
+		{
+			String[]					parts			= keys.get(i).split(":");
+			BinaryKey.Format	keyFormat	= BinaryKey.Format.UNSIGNED;
+			boolean						ascending	= true;
+
+			if (parts.length < 2)
+				throw new IllegalArgumentException("binary keys are OFFSET:LENGTH: " + keys.get(i));
+
+			for (int p = 2; p < parts.length; p++)
+			{
+				switch (parts[p].toLowerCase(Locale.ROOT))
+				{
+					case "unsigned":
+						keyFormat = BinaryKey.Format.UNSIGNED;
+						break;
+					case "signed":
+						keyFormat = BinaryKey.Format.SIGNED;
+						break;
+					case "bcd":
+						keyFormat = BinaryKey.Format.BCD;
+						break;
+					default:
+						ascending = ascending(parts[p], keys.get(i));
+						break;
+				}
+			}
+
+			binaryKeys[i] = new BinaryKey(number(parts[0], "-k"), number(parts[1], "-k"), keyFormat, ascending);
+		}
+
+		BinarySort sort = new BinarySort(recordLength, factor, verbose);
+
+		return sort(sort, sort.comparator(binaryKeys));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Comparator<Object> objectComparator()
+	{
+		if (comparatorClass == null)
+			throw new IllegalArgumentException("object needs a Comparator class, use -c");
+
+		try
+		{
+			return (Comparator<Object>) Class.forName(comparatorClass).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e)
+		{
+			throw new IllegalArgumentException("cannot create Comparator " + comparatorClass + ": " + e);
+		}
+	}
+
+	private static boolean ascending(String order, String key)
+	{
+		if (order.equalsIgnoreCase("desc"))
+			return false;
+		if (order.equalsIgnoreCase("asc"))
+			return true;
+
+		throw new IllegalArgumentException("unknown key option " + order + " in " + key);
+	}
+
+	private static String value(String[] args, int i, String option)
+	{
+		if (i >= args.length)
+			throw new IllegalArgumentException(option + " needs a value");
+
+		return args[i];
+	}
+
+	private static char separator(String value)
+	{
+		if (value.equals("\\t"))
+			return '\t';
+		if (value.length() != 1)
+			throw new IllegalArgumentException("the separator must be one character: " + value);
+
+		return value.charAt(0);
+	}
+
+	private static int number(String value, String option)
+	{
+		try
+		{
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException(option + " needs a number: " + value);
+		}
+	}
+
+	/**
+	 * @return long - a byte count such as 4096, 64k, 512m or 2g
+	 */
+	private static long size(String value, String option)
+	{
+		String	digits			= value.trim().toLowerCase(Locale.ROOT);
+		long		multiplier	= 1;
+
+		if (digits.endsWith("k"))
+			multiplier = 1024L;
+		else if (digits.endsWith("m"))
+			multiplier = 1024L * 1024;
+		else if (digits.endsWith("g"))
+			multiplier = 1024L * 1024 * 1024;
+
+		if (multiplier > 1)
+			digits = digits.substring(0, digits.length() - 1);
+
+		try
+		{
+			return Long.parseLong(digits) * multiplier;
+		} catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException(option + " needs a size such as 512m: " + value);
+		}
+	}
+
+	private static Codec codec(String extension)
+	{
+		Codec codec = Codecs.forName("name." + (extension.startsWith(".") ? extension.substring(1) : extension));
+
+		if (codec == null)
+			throw new IllegalArgumentException("no codec for " + extension);
+
+		return codec;
+	}
+
+}
@@ -0,0 +1,368 @@
+package com.pantgwyn.objectsort;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * A SortOutCallback that writes the sorted output as a set of files.
+ * <p>
+ * A new file is started every maxRecords records or once a file holds
+ * maxBytes bytes, and whenever the partition function gives a new value, so
+ * each partition has its own files. When the output ends a manifest is
+ * written listing each file with its record count, size and first and last
+ * keys.
+ * <p>
+ * Records are passed to each file in batches and encoded and written on the
+ * executor, so a file that is being compressed or flushed does not hold up the
+ * merge, and several files are written at once.
+ * <p>
+ * Pass the SplitOutput as the outCallback of any sort method.
+ *
+ * @author Dave Breeze
+ *
+ * @param <T> class of the objects being sorted.
+ */
+public class SplitOutput<T> implements SortOutCallback<T>
+{
+
+	private static final int						BATCH_SIZE				= 1024;
+	private static final int						PENDING_BATCHES		= 16;
+	private static final String					MANIFEST_SUFFIX		= "manifest.csv";
+
+	private final FileWrapper.Type			type;
+	private final String								directory;
+	private final String								prefix;
+	private final String								suffix;
+	private long												maxRecords				= Long.MAX_VALUE;
+	private long												maxBytes					= Long.MAX_VALUE;
+	private Function<T, ?>							partitioner;
+	private Function<T, String>					keyFormatter;
+	private Codec												codec;
+	private Executor										executor					= ForkJoinPool.commonPool();
+	private final Semaphore							pending						= new Semaphore(PENDING_BATCHES);
+	private final List<Part>						parts							= new ArrayList<Part>();
+	private Part												current;
+	private List<T>											batch;
+	private T														last;
+
+	/**
+	 * Constructor for SplitOutput
+	 * <p>
+	 * Files are named prefix, then the partition value and a dash if there is
+	 * a partition function, then a five digit sequence number, then suffix.
+	 *
+	 * @param type      - the type of data being written
+	 * @param directory - the directory for the files
+	 * @param prefix    - the start of each file name
+	 * @param suffix    - the end of each file name, e.g. ".csv.gz"
+	 */
+	public SplitOutput(FileWrapper.Type type, String directory, String prefix, String suffix)
+	{
+		this.type				= type;
+		this.directory	= directory;
+		this.prefix			= prefix;
+		this.suffix			= suffix;
+
+		if (type == FileWrapper.Type.CSV)
+			keyFormatter = record -> String.join(",", (CSVRecord) record);
+		else
+			keyFormatter = String::valueOf;
+	}
+
+	/**
+	 * @param maxRecords - the most records in one file
+	 */
+	public void setMaxRecords(long maxRecords)
+	{
+		this.maxRecords = Math.max(1, maxRecords);
+	}
+
+	/**
+	 * Roll to a new file once a file holds maxBytes. As the size is measured
+	 * as the file is written, and after any compression, files end a little
+	 * above maxBytes.
+	 *
+	 * @param maxBytes - the size, in bytes, at which a file is closed
+	 */
+	public void setMaxBytes(long maxBytes)
+	{
+		this.maxBytes = Math.max(1, maxBytes);
+	}
+
+	/**
+	 * Start a new file whenever the partition function gives a different value
+	 * from the previous record. The value is used in the file name.
+	 *
+	 * @param partitioner - the partition function, e.g. the first characters of
+	 *                    the key
+	 */
+	public void setPartitioner(Function<T, ?> partitioner)
+	{
+		this.partitioner = partitioner;
+	}
+
+	/**
+	 * @param keyFormatter - gives the key of a record as written to the manifest
+	 */
+	public void setKeyFormatter(Function<T, String> keyFormatter)
+	{
+		this.keyFormatter = keyFormatter;
+	}
+
+	/**
+	 * @param codec - the compression of every file, or null to choose by suffix
+	 */
+	public void setCodec(Codec codec)
+	{
+		this.codec = codec;
+	}
+
+	/**
+	 * @param executor - runs the file writes, default the common ForkJoinPool
+	 */
+	public void setExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * @return List - the files written, in key order
+	 */
+	public List<Part> getParts()
+	{
+		return Collections.unmodifiableList(parts);
+	}
+
+	/**
+	 * @return String - the fully qualified name of the manifest file
+	 */
+	public String getManifestName()
+	{
+		return Paths.get(directory, prefix + MANIFEST_SUFFIX).toString();
+	}
+
+	@Override
+	public void consumeSortOut(T sortObj)
+	{
+		if (sortObj == null)
+		{
+			finish();
+			return;
+		}
+
+		Object partition = partitioner == null ? null : partitioner.apply(sortObj);
+
+		if (current == null || current.records >= maxRecords || current.bytesWritten() >= maxBytes
+				|| (partitioner != null && !Objects.equals(partition, current.partition)))
+		{
+			closePart();
+			current						= new Part(partition);
+			current.firstKey	= keyFormatter.apply(sortObj);
+			batch							= new ArrayList<T>(BATCH_SIZE);
+		}
+
+		batch.add(sortObj);
+		current.records++;
+		last = sortObj;
+
+		if (batch.size() >= BATCH_SIZE)
+			flushBatch();
+	}
+
+	private void flushBatch()
+	{
+		if (batch.isEmpty())
+			return;
+
+		List<T>	records	= batch;
+		Part		part		= current;
+		batch = new ArrayList<T>(BATCH_SIZE);
+
+		try
+		{
+			pending.acquire();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted writing " + part.fileName, e);
+		}
+
+		part.writes = part.writes.thenRunAsync(() -> {
+			part.file.pushData(records);
+			part.bytesWritten	= part.file.getBytesWritten();
+			part.recordsFlushed	= part.file.getRecordsWritten();
+		}, executor).whenComplete((done, error) -> pending.release());
+	}
+
+	private void closePart()
+	{
+		if (current == null)
+			return;
+
+		flushBatch();
+		current.lastKey = keyFormatter.apply(last);
+
+		Part part = current;
+		part.writes	= part.writes.thenRunAsync(() -> {
+			try
+			{
+				part.file.stopOutStream();
+				part.bytesWritten = part.file.getBytesWritten();
+			} catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}, executor);
+
+		current = null;
+	}
+
+	private void finish()
+	{
+		closePart();
+
+		try
+		{
+			for (Part part : parts)
+				part.writes.join();
+
+			writeManifest();
+		} catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		} catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeManifest() throws IOException
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(getManifestName()), Charset.defaultCharset());
+				CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT))
+		{
+			printer.printRecord("file", "partition", "records", "bytes", "firstKey", "lastKey");
+
+			for (Part part : parts)
+				printer.printRecord(part.fileName, part.partition, part.records, part.bytesWritten, part.firstKey,
+														part.lastKey);
+		}
+	}
+
+	/**
+	 * One file of the output.
+	 */
+	public class Part
+	{
+		private final String					fileName;
+		private final Object					partition;
+		private final FileWrapper<T>	file;
+		private CompletableFuture<Void>	writes;
+		private long									records;
+		private volatile long					bytesWritten;
+		private volatile long					recordsFlushed;
+		private String								firstKey;
+		private String								lastKey;
+
+		private Part(Object partition)
+		{
+			String name = prefix + (partition == null ? "" : partition + "-") + String.format("%05d", parts.size()) + suffix;
+
+			this.partition	= partition;
+			fileName				= Paths.get(directory, name).toString();
+			file						= new FileWrapper<T>(type, fileName);
+			file.setCodec(codec);
+
+			writes = CompletableFuture.runAsync(() -> {
+				try
+				{
+					file.startOutStream();
+				} catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}, executor);
+
+			parts.add(this);
+		}
+
+		/**
+		 * Estimate the size of the file including the records not yet written,
+		 * from the bytes per record written so far.
+		 */
+		private long bytesWritten()
+		{
+			long flushed = recordsFlushed;
+
+			return flushed == 0 ? 0 : bytesWritten * records / flushed;
+		}
+
+		/**
+		 * @return String - the fully qualified file name
+		 */
+		public String getFileName()
+		{
+			return fileName;
+		}
+
+		/**
+		 * @return Object - the partition value, null without a partition function
+		 */
+		public Object getPartition()
+		{
+			return partition;
+		}
+
+		/**
+		 * @return long - the records in the file
+		 */
+		public long getRecords()
+		{
+			return records;
+		}
+
+		/**
+		 * @return long - the size of the file, complete once the output has ended
+		 */
+		public long getBytes()
+		{
+			return bytesWritten;
+		}
+
+		/**
+		 * @return String - the key of the first record
+		 */
+		public String getFirstKey()
+		{
+			return firstKey;
+		}
+
+		/**
+		 * @return String - the key of the last record
+		 */
+		public String getLastKey()
+		{
+			return lastKey;
+		}
+	}
+
+}
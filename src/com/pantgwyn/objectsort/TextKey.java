@@ -0,0 +1,259 @@
+package com.pantgwyn.objectsort;
+
+import java.util.Comparator;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * A key field of a delimited text line or CSV record, as sorted by TextSort
+ * or CSVSort.
+ * <p>
+ * A field of a text line is found by scanning for the separator each time it
+ * is compared, and STRING and IGNORE_CASE fields are compared in place in the
+ * line without being copied. NUMBER fields compare as decimal numbers, with
+ * fields that are not numbers sorting first in string order. A missing field
+ * compares as empty.
+ *
+ * @author Dave Breeze
+ *
+ */
+public class TextKey
+{
+
+	private final int			column;
+	private final Format	format;
+	private final boolean	ascending;
+
+	/**
+	 * Constructor for TextKey
+	 *
+	 * @param column    - the 0 based column of the field
+	 * @param format    - how the field is compared
+	 * @param ascending - false to sort the field in descending order
+	 */
+	public TextKey(int column, Format format, boolean ascending)
+	{
+		if (column < 0)
+			throw new IllegalArgumentException("invalid key column " + column);
+
+		this.column			= column;
+		this.format			= format;
+		this.ascending	= ascending;
+	}
+
+	/**
+	 * Constructor for an ascending TextKey
+	 *
+	 * @param column - the 0 based column of the field
+	 * @param format - how the field is compared
+	 */
+	public TextKey(int column, Format format)
+	{
+		this(column, format, true);
+	}
+
+	/**
+	 * @param separator - the character between the fields of a line
+	 * @param keys      - the key fields, most significant first
+	 * @return Comparator - compares lines on the key fields
+	 */
+	public static Comparator<String> comparator(char separator, TextKey... keys)
+	{
+		TextKey[] fields = keys.clone();
+
+		return (a, b) -> {
+			for (TextKey key : fields)
+			{
+				int result = key.compare(a, b, separator);
+				if (result != 0)
+					return result;
+			}
+			return 0;
+		};
+	}
+
+	/**
+	 * @param keys - the key fields, most significant first
+	 * @return Comparator - compares CSV records on the key fields
+	 */
+	public static Comparator<CSVRecord> csvComparator(TextKey... keys)
+	{
+		TextKey[] fields = keys.clone();
+
+		return (a, b) -> {
+			for (TextKey key : fields)
+			{
+				int result = key.compare(a, b);
+				if (result != 0)
+					return result;
+			}
+			return 0;
+		};
+	}
+
+	/**
+	 * Compare this field of two lines.
+	 *
+	 * @param a         - the first line
+	 * @param b         - the second line
+	 * @param separator - the character between the fields of a line
+	 * @return int - negative, zero or positive as a sorts before, with or after b
+	 */
+	public int compare(String a, String b, char separator)
+	{
+		int	startA	= fieldStart(a, separator);
+		int	startB	= fieldStart(b, separator);
+		int	endA		= fieldEnd(a, startA, separator);
+		int	endB		= fieldEnd(b, startB, separator);
+		int	result;
+
+		if (format == Format.NUMBER)
+			result = compareNumbers(a.substring(startA, endA), b.substring(startB, endB));
+		else
+			result = compareRegions(a, startA, endA, b, startB, endB, format == Format.IGNORE_CASE);
+
+		return ascending ? result : -result;
+	}
+
+	/**
+	 * Compare this field of two CSV records.
+	 *
+	 * @param a - the first record
+	 * @param b - the second record
+	 * @return int - negative, zero or positive as a sorts before, with or after b
+	 */
+	public int compare(CSVRecord a, CSVRecord b)
+	{
+		String	fieldA	= column < a.size() ? a.get(column) : "";
+		String	fieldB	= column < b.size() ? b.get(column) : "";
+		int			result;
+
+		switch (format)
+		{
+			case NUMBER:
+				result = compareNumbers(fieldA, fieldB);
+				break;
+			case IGNORE_CASE:
+				result = fieldA.compareToIgnoreCase(fieldB);
+				break;
+			default:
+				result = fieldA.compareTo(fieldB);
+				break;
+		}
+
+		return ascending ? result : -result;
+	}
+
+	/**
+	 * @return int - the offset of the field in the line, the length of the line
+	 *         if it has too few fields
+	 */
+	private int fieldStart(String line, char separator)
+	{
+		int start = 0;
+
+		for (int field = 0; field < column; field++)
+		{
+			int next = line.indexOf(separator, start);
+			if (next < 0)
+				return line.length();
+			start = next + 1;
+		}
+
+		return start;
+	}
+
+	private static int fieldEnd(String line, int start, char separator)
+	{
+		int end = line.indexOf(separator, start);
+
+		return end < 0 ? line.length() : end;
+	}
+
+	private static int compareRegions(String a, int startA, int endA, String b, int startB, int endB, boolean ignoreCase)
+	{
+		int length = Math.min(endA - startA, endB - startB);
+
+		for (int i = 0; i < length; i++)
+		{
+			char	charA	= a.charAt(startA + i);
+			char	charB	= b.charAt(startB + i);
+
+			if (charA == charB)
+				continue;
+
+			if (ignoreCase)
+			{
+				charA	= Character.toLowerCase(Character.toUpperCase(charA));
+				charB	= Character.toLowerCase(Character.toUpperCase(charB));
+				if (charA == charB)
+					continue;
+			}
+
+			return charA - charB;
+		}
+
+		return (endA - startA) - (endB - startB);
+	}
+
+	private static int compareNumbers(String a, String b)
+	{
+		Double	numberA	= parse(a);
+		Double	numberB	= parse(b);
+
+		if (numberA != null && numberB != null)
+			return Double.compare(numberA, numberB);
+		if (numberA == null && numberB == null)
+			return a.compareTo(b);
+
+		return numberA == null ? -1 : 1;
+	}
+
+	private static Double parse(String field)
+	{
+		try
+		{
+			return Double.valueOf(field.trim());
+		} catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return int - the 0 based column of the field
+	 */
+	public int getColumn()
+	{
+		return column;
+	}
+
+	/**
+	 * @return Format - how the field is compared
+	 */
+	public Format getFormat()
+	{
+		return format;
+	}
+
+	/**
+	 * @return boolean - true if the field sorts in ascending order
+	 */
+	public boolean isAscending()
+	{
+		return ascending;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "column:" + column + " " + format + (ascending ? " ascending" : " descending");
+	}
+
+	public enum Format
+	{
+		STRING,
+		IGNORE_CASE,
+		NUMBER;
+	}
+
+}
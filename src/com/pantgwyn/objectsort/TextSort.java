@@ -76,4 +76,10 @@ public class TextSort extends Sort<String>
 		return FileWrapper.Type.TEXT ;
 	}
 
+	@Override
+	protected long estimateSize(String record)
+	{
+		return 40 + 2L * record.length();
+	}
+
 }
@@ -0,0 +1,153 @@
+package com.pantgwyn.objectsort;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The set of temporary directories used for sort work files.
+ * <p>
+ * Work files are striped across the directories either round robin or by
+ * free space. Directories are grouped by the device (file store) they live
+ * on so that a merge can write its output to a different device from the one
+ * holding its inputs.
+ *
+ * @author Dave Breeze
+ *
+ */
+class WorkDirectories
+{
+
+	private final List<String>	dirs		= new ArrayList<String>();
+	private final List<Object>	devices	= new ArrayList<Object>();
+	private Sort.Placement			placement;
+	private int									next;
+
+	WorkDirectories(List<String> tempDirs, Sort.Placement placement)
+	{
+		this.placement = placement;
+
+		for (String dir : tempDirs)
+		{
+			dirs.add(dir);
+			devices.add(getDevice(dir));
+		}
+	}
+
+	/**
+	 * @return the number of directories available for work files
+	 */
+	int size()
+	{
+		return dirs.size();
+	}
+
+	/**
+	 * Choose the directory for the next work file.
+	 *
+	 * @return String - the directory name
+	 */
+	String nextDir()
+	{
+		return nextDir(new ArrayList<String>());
+	}
+
+	/**
+	 * Choose the directory for the output of a merge.
+	 * <p>
+	 * Devices holding the fewest of the merge input files are preferred so that
+	 * reading the inputs and writing the output are spread over different disks.
+	 *
+	 * @param inputFiles - the fully qualified names of the merge input files
+	 * @return String - the directory name
+	 */
+	synchronized String nextDir(Collection<String> inputFiles)
+	{
+		Map<Object, Integer> inputsOnDevice = new HashMap<Object, Integer>();
+
+		for (String fileName : inputFiles)
+		{
+			Object device = deviceOf(fileName);
+			if (device != null)
+				inputsOnDevice.merge(device, 1, Integer::sum);
+		}
+
+		int fewest = Integer.MAX_VALUE;
+		for (Object device : devices)
+			fewest = Math.min(fewest, inputsOnDevice.getOrDefault(device, 0));
+
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (int i = 0; i < dirs.size(); i++)
+		{
+			if (inputsOnDevice.getOrDefault(devices.get(i), 0) == fewest)
+				candidates.add(i);
+		}
+
+		int chosen;
+
+		if (placement == Sort.Placement.FREE_SPACE)
+		{
+			chosen = candidates.get(0);
+			long mostFree = -1;
+			for (int i : candidates)
+			{
+				long free = new File(dirs.get(i)).getUsableSpace();
+				if (free > mostFree)
+				{
+					mostFree	= free;
+					chosen		= i;
+				}
+			}
+		} else
+		{
+			chosen = candidates.get(0);
+			for (int i : candidates)
+			{
+				if (i >= next)
+				{
+					chosen = i;
+					break;
+				}
+			}
+		}
+
+		next = chosen + 1;
+		if (next >= dirs.size())
+			next = 0;
+
+		return dirs.get(chosen);
+	}
+
+	private Object deviceOf(String fileName)
+	{
+		String parent = new File(fileName).getAbsoluteFile().getParent();
+
+		for (int i = 0; i < dirs.size(); i++)
+		{
+			if (new File(dirs.get(i)).getAbsolutePath().equals(parent))
+				return devices.get(i);
+		}
+
+		return null;
+	}
+
+	private static Object getDevice(String dir)
+	{
+		try
+		{
+			FileStore store = Files.getFileStore(new File(dir).toPath());
+			return store.name() + ":" + store.toString();
+		} catch (IOException | SecurityException e)
+		{
+			// device unknown - treat the directory as its own device
+			return new File(dir).getAbsolutePath();
+		}
+	}
+
+}